@@ -0,0 +1,151 @@
+import java.util.Random;
+
+/**
+ * Generates API response payloads shaped like those of the Warframe Market API for benchmarks.
+ * All payloads are generated from a fixed seed, so every run measures the same data.
+ */
+public class BenchmarkFixtures {
+  //languages in which the API returns item descriptions
+  private static final String[] LANGUAGES = {
+      "en", "ru", "ko", "de", "fr", "pt", "zh-hans", "zh-hant", "es", "it", "pl", "uk"
+  };
+  private static final String[] DROP_SOURCES = {
+      "New Loka", "The Perrin Sequence", "Red Veil", "Steel Meridian", "Cephalon Suda",
+      "Arbiters of Hexis", "Lith Relic", "Meso Relic", "Neo Relic", "Axi Relic", "Baro Ki'Teer"
+  };
+
+  /**
+   * Generates an item details response for an item within a set.
+   * @param urlName the url_name of the requested item
+   * @param setSize the number of items within the set, including the requested item
+   * @param seed the seed for the generated drop sources and descriptions
+   * @return a JSON String shaped like a response of /items/{url_name}
+   */
+  public static String itemDetailsJson(String urlName, int setSize, long seed) {
+    Random random = new Random(seed);
+    StringBuilder json = new StringBuilder();
+    String requestedId = itemId(urlName, 0);
+    json.append("{\"payload\": {\"item\": {\"id\": \"").append(requestedId).append("\", \"items_in_set\": [");
+    for(int i = 0; i < setSize; i++) {
+      if(i > 0) {
+        json.append(", ");
+      }
+      String memberUrlName = i == 0 ? urlName : urlName + "_part_" + i;
+      appendSetMember(json, itemId(urlName, i), memberUrlName, i == setSize - 1, random);
+    }
+    json.append("]}}}");
+    return json.toString();
+  }
+
+  /**
+   * Generates an item details response for a generated item whose set consists of other generated items.
+   * Every member is generated from its own index as seed, so the response lists the same drop sources for
+   * every member as the response for that member itself. A set of 1 matches itemDetailsJson(urlName, 1, index).
+   * @param firstIndex the index of the first item within the set
+   * @param setSize the number of items within the set, including the requested item
+   * @param requestedIndex the index of the requested item
+   * @return a JSON String shaped like a response of /items/{url_name}
+   */
+  public static String itemSetDetailsJson(int firstIndex, int setSize, int requestedIndex) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"payload\": {\"item\": {\"id\": \"").append(itemId(itemUrlName(requestedIndex), 0))
+        .append("\", \"items_in_set\": [");
+    for(int i = 0; i < setSize; i++) {
+      if(i > 0) {
+        json.append(", ");
+      }
+      String memberUrlName = itemUrlName(firstIndex + i);
+      appendSetMember(json, itemId(memberUrlName, 0), memberUrlName, i == setSize - 1, new Random(firstIndex + i));
+    }
+    json.append("]}}}");
+    return json.toString();
+  }
+
+  private static void appendSetMember(StringBuilder json, String id, String urlName, boolean setRoot, Random random) {
+    json.append("{\"id\": \"").append(id).append("\", \"url_name\": \"").append(urlName)
+        .append("\", \"set_root\": ").append(setRoot)
+        .append(", \"trading_tax\": 2000, \"ducats\": 45, \"mastery_level\": 8")
+        .append(", \"tags\": [\"prime\", \"primary\", \"component\"]");
+    for(String language : LANGUAGES) {
+      json.append(", \"").append(language).append("\": {\"item_name\": \"").append(urlName)
+          .append("\", \"description\": \"").append(description(random))
+          .append("\", \"wiki_link\": \"https://warframe.fandom.com/wiki/").append(urlName)
+          .append("\", \"drop\": [");
+      int drops = 1 + random.nextInt(6);
+      for(int d = 0; d < drops; d++) {
+        if(d > 0) {
+          json.append(", ");
+        }
+        json.append("{\"name\": \"").append(DROP_SOURCES[random.nextInt(DROP_SOURCES.length)])
+            .append(" ").append(random.nextInt(100)).append("\", \"link\": null}");
+      }
+      json.append("]}");
+    }
+    json.append("}");
+  }
+
+  /**
+   * @param index the index of an item
+   * @return the url_name of the generated item with the passed index
+   */
+  public static String itemUrlName(int index) {
+    return "bench_item_" + index;
+  }
+
+  /**
+   * Generates a response with all orders of a user's profile.
+   * @param orderCount the number of sell orders within the profile
+   * @param distinctItems the number of distinct items that the orders are spread over
+   * @param seed the seed for the generated order values
+   * @return a JSON String shaped like a response of /profile/{user}/orders
+   */
+  public static String profileOrdersJson(int orderCount, int distinctItems, long seed) {
+    Random random = new Random(seed);
+    StringBuilder json = new StringBuilder(orderCount * 600);
+    json.append("{\"payload\": {\"buy_orders\": [], \"sell_orders\": [");
+    for(int i = 0; i < orderCount; i++) {
+      if(i > 0) {
+        json.append(", ");
+      }
+      int itemIndex = random.nextInt(distinctItems);
+      String urlName = itemUrlName(itemIndex);
+      boolean isMod = itemIndex % 3 == 0;
+      json.append("{\"id\": \"").append(String.format("%024x", (long) i))
+          .append("\", \"platinum\": ").append(5 + random.nextInt(200))
+          .append(", \"quantity\": ").append(1 + random.nextInt(5))
+          .append(", \"visible\": ").append(random.nextBoolean())
+          .append(", \"order_type\": \"sell\", \"platform\": \"pc\", \"region\": \"en\"")
+          .append(", \"creation_date\": \"2020-07-25T21:53:00.000+00:00\"")
+          .append(", \"last_update\": \"2020-07-26T10:12:00.000+00:00\"");
+      if(isMod) {
+        json.append(", \"mod_rank\": ").append(random.nextInt(4));
+      }
+      json.append(", \"item\": {\"id\": \"").append(itemId(urlName, 0))
+          .append("\", \"url_name\": \"").append(urlName)
+          .append("\", \"icon\": \"items/images/en/").append(urlName).append(".png\", \"icon_format\": \"port\"")
+          .append(", \"thumb\": \"items/images/en/thumbs/").append(urlName).append(".128x128.png\", \"sub_icon\": null");
+      if(isMod) {
+        json.append(", \"mod_max_rank\": 3, \"tags\": [\"mod\", \"rare\", \"augment\"]");
+      }
+      else {
+        json.append(", \"tags\": [\"weapon\", \"primary\"]");
+      }
+      json.append(", \"en\": {\"item_name\": \"").append(urlName).append("\"}}}");
+    }
+    json.append("]}}");
+    return json.toString();
+  }
+
+  private static String itemId(String urlName, int index) {
+    return String.format("%024x", (urlName.hashCode() & 0xffffffffL) * 31 + index);
+  }
+
+  private static String description(Random random) {
+    StringBuilder description = new StringBuilder();
+    int words = 80 + random.nextInt(120);
+    for(int i = 0; i < words; i++) {
+      description.append(i == 0 ? "" : " ").append(Long.toString(random.nextLong() & 0xffffff, 36));
+    }
+    return description.toString();
+  }
+}
@@ -0,0 +1,63 @@
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Runs a piece of code repeatedly and reports its average CPU time and allocated bytes per operation,
+ * or runs it once and reports how much heap memory its result keeps reachable.
+ * Every operation is run as often as it is measured beforehand to let the JIT compiler warm it up.
+ * Results of the operations are kept reachable, so that the JIT compiler cannot eliminate them.
+ */
+public class BenchmarkRunner {
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  //results of all operations end up here; volatile keeps the writes from being optimized away
+  private static volatile Object sink;
+
+  /**
+   * Warms up and measures an operation and prints the results.
+   * @param name the name of the operation to print with the results
+   * @param iterations the number of times the operation is run for warming up and for measuring each
+   * @param operation the operation to measure
+   */
+  public static void measure(String name, int iterations, Supplier<?> operation) {
+    for(int i = 0; i < iterations; i++) {
+      sink = operation.get();
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+    long cpuTimeBefore = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    for(int i = 0; i < iterations; i++) {
+      sink = operation.get();
+    }
+    long cpuNanos = THREAD_MX_BEAN.getCurrentThreadCpuTime() - cpuTimeBefore;
+    long allocatedBytes = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    System.out.printf("%-44s %14.1f us/op %16d bytes/op%n",
+        name, cpuNanos / 1000.0 / iterations, allocatedBytes / iterations);
+  }
+
+  /**
+   * Runs an operation once and prints the heap memory that its result keeps reachable.
+   * @param name the name of the operation to print with the result
+   * @param operation the operation whose result is measured
+   */
+  public static void measureRetained(String name, Supplier<?> operation) {
+    sink = null;
+    long usedBefore = getUsedHeapAfterGc();
+    sink = operation.get();
+    long retainedBytes = getUsedHeapAfterGc() - usedBefore;
+    sink = null;
+
+    System.out.printf("%-44s %14s %16d bytes retained%n", name, "", retainedBytes);
+  }
+
+  private static long getUsedHeapAfterGc() {
+    //a few collections, so that objects with finalizers or weak references are gone as well
+    for(int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Measures CPU time and allocated bytes of the steps that decide which orders an update changes,
+ * with the network stubbed out by generated response payloads.
+ * The per-item steps are measured once, the per-profile steps for every passed profile size.
+ * Profile orders are also read into JSONObject trees and update bodies built from JSONObjects,
+ * as the program used to, for comparison with SellOrders.
+ * Run with the json-java library and the program classes on the classpath:
+ * java -Xmx4g -cp out:lib/json-java.jar DecisionPathBenchmark [orderCount...]
+ */
+public class DecisionPathBenchmark {
+  //orders of a profile are spread over at most this many distinct items
+  private static final int MAX_DISTINCT_ITEMS = 2500;
+  //the number of operations that are measured is chosen so that every measurement covers about this many orders
+  private static final int ORDERS_PER_MEASUREMENT = 1_000_000;
+
+  public static void main(String[] args) {
+    int[] orderCounts = {1_000, 10_000, 100_000};
+    if(args.length > 0) {
+      orderCounts = new int[args.length];
+      for(int i = 0; i < args.length; i++) {
+        orderCounts[i] = Integer.parseInt(args[i]);
+      }
+    }
+
+    int visibleSyndicateMask = Syndicate.NEW_LOKA.getMask() | Syndicate.STEEL_MERIDIAN.getMask()
+        | Syndicate.ARBITERS_OF_HEXIS.getMask();
+
+    String itemDetailsJson = BenchmarkFixtures.itemDetailsJson("bench_item_0", 1, 7);
+    ItemDetails itemDetails = parseItemDetails(itemDetailsJson);
+    List<String> dropNames = itemDetails.getDropNames();
+    int syndicateMask = JSONProcessor.itemDropsFromSyndicates(itemDetails);
+    System.out.println("Per item (" + itemDetailsJson.length() + " chars of item details, "
+        + dropNames.size() + " drop sources)");
+    BenchmarkRunner.measure("getItemDropSources", 20_000,
+        () -> parseItemDetails(itemDetailsJson).getDropNames());
+    BenchmarkRunner.measure("itemDropsFromSyndicates", 1_000_000,
+        () -> JSONProcessor.itemDropsFromSyndicates(itemDetails));
+    BenchmarkRunner.measure("matchDropSource", 1_000_000,
+        () -> Syndicate.matchDropSource(dropNames.get(0)));
+    BenchmarkRunner.measure("getTotalVisibility", 1_000_000,
+        () -> JSONProcessor.getTotalVisibility(syndicateMask, visibleSyndicateMask));
+
+    for(int orderCount : orderCounts) {
+      int distinctItems = Math.min(MAX_DISTINCT_ITEMS, Math.max(1, orderCount / 4));
+      String profileOrdersJson = BenchmarkFixtures.profileOrdersJson(orderCount, distinctItems, 11);
+      SyndicateIndex syndicateIndex = buildSyndicateIndex(distinctItems);
+      SellOrders sellOrders = parseSellOrders(profileOrdersJson);
+      int[] allOrders = new int[sellOrders.size()];
+      for(int order = 0; order < allOrders.length; order++) {
+        allOrders[order] = order;
+      }
+      int iterations = Math.max(3, ORDERS_PER_MEASUREMENT / orderCount);
+      List<String> plannedOrderIds = new ArrayList<>(JSONProcessor.planUpdates(sellOrders, allOrders, syndicateIndex,
+          visibleSyndicateMask, new int[orderCount]).keySet());
+      List<JSONObject> jsonSellOrders = domSellOrders(profileOrdersJson);
+
+      System.out.println(orderCount + " orders over " + distinctItems + " items ("
+          + profileOrdersJson.length() + " chars of profile orders, " + plannedOrderIds.size() + " planned updates)");
+      BenchmarkRunner.measure("parse profile orders (JSONObject tree)", iterations,
+          () -> domSellOrders(profileOrdersJson));
+      BenchmarkRunner.measure("parse profile orders", iterations, () -> parseSellOrders(profileOrdersJson));
+      BenchmarkRunner.measureRetained("retained profile orders (JSONObject tree)",
+          () -> domSellOrders(profileOrdersJson));
+      BenchmarkRunner.measureRetained("retained profile orders", () -> parseSellOrders(profileOrdersJson));
+      BenchmarkRunner.measure("plan updates", iterations,
+          () -> JSONProcessor.planUpdates(sellOrders, allOrders, syndicateIndex, visibleSyndicateMask,
+              new int[orderCount]));
+      BenchmarkRunner.measure("parse profile orders and plan updates", iterations,
+          () -> JSONProcessor.planUpdates(parseSellOrders(profileOrdersJson), allOrders, syndicateIndex,
+              visibleSyndicateMask, new int[orderCount]));
+      BenchmarkRunner.measure("build update bodies (JSONObject)", iterations,
+          () -> domUpdateRequestBodies(jsonSellOrders, plannedOrderIds));
+      BenchmarkRunner.measure("build update bodies", iterations, () -> {
+        List<String> bodies = new ArrayList<>(plannedOrderIds.size());
+        for(String orderId : plannedOrderIds) {
+          int order = sellOrders.indexOf(orderId);
+          bodies.add(sellOrders.buildUpdateRequestBody(order, !sellOrders.isVisible(order)));
+        }
+        return bodies;
+      });
+    }
+  }
+
+  /**
+   * Builds a SyndicateIndex from generated item details for every item, as it would result from requesting them.
+   */
+  private static SyndicateIndex buildSyndicateIndex(int distinctItems) {
+    Map<String, Integer> syndicateMasksByUrlName = new HashMap<>();
+    for(int i = 0; i < distinctItems; i++) {
+      String urlName = BenchmarkFixtures.itemUrlName(i);
+      ItemDetails itemDetails = parseItemDetails(BenchmarkFixtures.itemDetailsJson(urlName, 1, i));
+      syndicateMasksByUrlName.put(urlName, JSONProcessor.itemDropsFromSyndicates(itemDetails));
+    }
+    return new SyndicateIndex(syndicateMasksByUrlName, 0);
+  }
+
+  private static SellOrders parseSellOrders(String json) {
+    try {
+      return SellOrders.parse(new StringReader(json));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads the sell orders into JSONObject trees, as the program used to.
+   */
+  private static List<JSONObject> domSellOrders(String json) {
+    JSONArray sellOrdersArray = new JSONObject(new JSONTokener(new StringReader(json)))
+        .getJSONObject("payload").getJSONArray("sell_orders");
+    List<JSONObject> sellOrders = new ArrayList<>(sellOrdersArray.length());
+    for(int i = 0; i < sellOrdersArray.length(); i++) {
+      sellOrders.add(sellOrdersArray.getJSONObject(i));
+    }
+    return sellOrders;
+  }
+
+  /**
+   * Builds the update bodies of the passed orders from JSONObjects, as the program used to.
+   */
+  private static List<String> domUpdateRequestBodies(List<JSONObject> sellOrders, List<String> orderIds) {
+    Map<String, JSONObject> sellOrdersById = new HashMap<>();
+    for(JSONObject order : sellOrders) {
+      sellOrdersById.put(order.getString("id"), order);
+    }
+    List<String> bodies = new ArrayList<>(orderIds.size());
+    for(String orderId : orderIds) {
+      JSONObject order = sellOrdersById.get(orderId);
+      JSONObject jsonObject = new JSONObject();
+      jsonObject.put("order_id", order.getString("id"));
+      jsonObject.put("platinum", order.getFloat("platinum"));
+      jsonObject.put("quantity", order.getInt("quantity"));
+      jsonObject.put("visible", !order.getBoolean("visible"));
+      if(order.has("mod_rank")) {
+        jsonObject.put("mod_rank", order.getInt("mod_rank"));
+      }
+      bodies.add(jsonObject.toString());
+    }
+    return bodies;
+  }
+
+  private static ItemDetails parseItemDetails(String json) {
+    try {
+      return ItemDetails.parse(json);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
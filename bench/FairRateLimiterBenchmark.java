@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates several accounts making requests under one global rate limit and compares the previous
+ * scheduling, a single pool of request threads in front of a plain RateLimiter, with request threads
+ * per account in front of a FairRateLimiter.
+ * A large account queues its whole backlog first, smaller accounts follow shortly after. Reported are
+ * the overall rate, which should stay at the limit, and when every account got its last permit, which
+ * shows whether the smaller accounts had to wait for the backlog of the large one.
+ * No requests are actually sent; holding a permit is simulated by a short sleep.
+ * Run with the program classes on the classpath:
+ * java -cp out FairRateLimiterBenchmark [permitsPerSecond]
+ */
+public class FairRateLimiterBenchmark {
+  private static final int THREADS_PER_POOL = 8;
+  private static final long REQUEST_MILLIS = 50;
+  private static final String[] ACCOUNT_NAMES = {"large", "medium", "small"};
+  private static final int[] ACCOUNT_REQUESTS = {100, 30, 10};
+  //the smaller accounts start this long after the large one
+  private static final long FOLLOWER_DELAY_MILLIS = 1000;
+
+  /**
+   * Takes a permit on behalf of an account.
+   */
+  @FunctionalInterface
+  private interface PermitSource {
+    void acquire(String accountName) throws InterruptedException;
+  }
+
+  public static void main(String[] args) throws Exception {
+    double permitsPerSecond = args.length > 0 ? Double.parseDouble(args[0]) : 10;
+
+    RateLimiter sharedLimiter = new RateLimiter(permitsPerSecond, 1);
+    ExecutorService sharedPool = newPool("shared");
+    List<ExecutorService> sharedPools = new ArrayList<>();
+    for(int i = 0; i < ACCOUNT_NAMES.length; i++) {
+      sharedPools.add(sharedPool);
+    }
+    run("single pool, RateLimiter", sharedPools, accountName -> sharedLimiter.acquire(), permitsPerSecond);
+    sharedPool.shutdown();
+
+    FairRateLimiter fairLimiter = new FairRateLimiter(new RateLimiter(permitsPerSecond, 1));
+    List<ExecutorService> accountPools = new ArrayList<>();
+    for(String accountName : ACCOUNT_NAMES) {
+      accountPools.add(newPool(accountName));
+    }
+    run("pool per account, FairRateLimiter", accountPools, accountName -> fairLimiter.acquire(accountName, RequestPriority.READ), permitsPerSecond);
+    for(ExecutorService pool : accountPools) {
+      pool.shutdown();
+    }
+  }
+
+  private static void run(String name, List<ExecutorService> pools, PermitSource permitSource,
+      double permitsPerSecond) throws InterruptedException {
+    long startNanos = System.nanoTime();
+    long[] lastPermitNanos = new long[ACCOUNT_NAMES.length];
+    List<CompletableFuture<Void>> requests = new ArrayList<>();
+    for(int account = 0; account < ACCOUNT_NAMES.length; account++) {
+      if(account == 1) {
+        Thread.sleep(FOLLOWER_DELAY_MILLIS);
+      }
+      String accountName = ACCOUNT_NAMES[account];
+      int accountIndex = account;
+      for(int i = 0; i < ACCOUNT_REQUESTS[account]; i++) {
+        requests.add(CompletableFuture.runAsync(() -> {
+          try {
+            permitSource.acquire(accountName);
+            synchronized(lastPermitNanos) {
+              lastPermitNanos[accountIndex] = System.nanoTime() - startNanos;
+            }
+            Thread.sleep(REQUEST_MILLIS);
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }, pools.get(account)));
+      }
+    }
+    CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).join();
+
+    long lastNanos = 0;
+    for(long nanos : lastPermitNanos) {
+      lastNanos = Math.max(lastNanos, nanos);
+    }
+    System.out.printf("== %s: %d permits at %.2f/s (limit %.2f/s)%n", name, requests.size(),
+        (requests.size() - 1) / (lastNanos / 1e9), permitsPerSecond);
+    for(int account = 0; account < ACCOUNT_NAMES.length; account++) {
+      long accountStartMillis = account == 0 ? 0 : FOLLOWER_DELAY_MILLIS;
+      System.out.printf("  %-8s %4d requests, last permit %6.1f s after the account started%n",
+          ACCOUNT_NAMES[account], ACCOUNT_REQUESTS[account],
+          (TimeUnit.NANOSECONDS.toMillis(lastPermitNanos[account]) - accountStartMillis) / 1000.0);
+    }
+  }
+
+  private static ExecutorService newPool(String name) {
+    return Executors.newFixedThreadPool(THREADS_PER_POOL, runnable -> {
+      Thread thread = new Thread(runnable, "bench-" + name);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
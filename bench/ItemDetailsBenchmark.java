@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares CPU time and allocated bytes of extracting the drop sources from an item details response
+ * by building JSONObject trees, as the program used to, against the streaming ItemDetails extraction.
+ * Run with the json-java library and the program classes on the classpath:
+ * java -cp out:lib/json-java.jar ItemDetailsBenchmark [setSize] [iterations]
+ */
+public class ItemDetailsBenchmark {
+  public static void main(String[] args) throws Exception {
+    int setSize = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    String json = BenchmarkFixtures.itemDetailsJson("bench_prime_set", setSize, 42);
+    System.out.println("Payload: " + json.length() + " chars, " + setSize + " items in set");
+
+    if(!domDropSources(json).equals(ItemDetails.parse(json).getDropNames())) {
+      throw new IllegalStateException("Extraction results differ");
+    }
+
+    BenchmarkRunner.measure("JSONObject tree", iterations, () -> domDropSources(json));
+    BenchmarkRunner.measure("Streaming", iterations, () -> parse(json));
+  }
+
+  private static ItemDetails parse(String json) {
+    try {
+      return ItemDetails.parse(json);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * The drop source extraction as it was implemented before, parsing the response twice.
+   */
+  private static List<String> domDropSources(String jsonItemDetails) {
+    String itemId = new JSONObject(jsonItemDetails)
+        .getJSONObject("payload").getJSONObject("item").getString("id");
+    JSONArray itemsInSetArray = new JSONObject(jsonItemDetails)
+        .getJSONObject("payload").getJSONObject("item").getJSONArray("items_in_set");
+    JSONArray itemDropSources = null;
+    for(int i = 0; i < itemsInSetArray.length(); i++) {
+      if(itemsInSetArray.getJSONObject(i).getString("id").equals(itemId)) {
+        itemDropSources = itemsInSetArray.getJSONObject(i).getJSONObject("en").getJSONArray("drop");
+      }
+    }
+    List<String> dropNames = new ArrayList<>();
+    for(int i = 0; i < itemDropSources.length(); i++) {
+      dropNames.add(itemDropSources.getJSONObject(i).getString("name"));
+    }
+    return dropNames;
+  }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Checks that JsonPullParser reads the same values as org.json, the parser the program used before.
+ * Every fixture is read by both parsers into plain Maps, Lists, Strings, Doubles and Booleans, which are compared.
+ * Properties whose names start with "skip" are skipped with skipValue() instead of being read,
+ * and removed from the values of org.json before comparing. Every fixture is read once from a Reader
+ * that fills the whole buffer of the parser and once from a Reader that returns only a few characters at a time.
+ * The fixtures cover escapes, empty containers, null values, numbers and skipped nested containers,
+ * as well as Strings, unicode escapes, names and numbers that straddle the end of the 8192 character buffer.
+ * Exits with status 1 if any fixture is read differently.
+ * Run with the json-java library and the program classes on the classpath:
+ * java -cp out:lib/json-java.jar JsonPullParserCheck
+ */
+public class JsonPullParserCheck {
+  //size of the buffer of JsonPullParser
+  private static final int PARSER_BUFFER_SIZE = 8192;
+  //characters returned by a single read of the trickling Reader
+  private static final int TRICKLE_CHARS = 7;
+  private static final String SKIP_PREFIX = "skip";
+
+  /**
+   * Reader that returns at most a few characters per read, so that values end up split across many fills.
+   */
+  private static class TrickleReader extends Reader {
+    private final Reader reader;
+
+    TrickleReader(String json) {
+      this.reader = new StringReader(json);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return reader.read(cbuf, off, Math.min(len, TRICKLE_CHARS));
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    List<String> fixtures = new ArrayList<>();
+    fixtures.add("{\"quote\":\"a\\\"b\",\"backslash\":\"a\\\\b\",\"slash\":\"a\\/b\","
+        + "\"control\":\"\\b\\f\\n\\r\\t\",\"unicode\":\"\\u00e9\\u0041\\u20AC\",\"surrogates\":\"\\ud83d\\ude00\","
+        + "\"raw\":\"\u00e9\u20ac\ud83d\ude00\",\"escaped\\\"name\":\"\\\\\\\"\",\"empty\":\"\"}");
+    fixtures.add("{\"object\":{},\"array\":[],\"nested\":[{},[],[[]],{\"a\":{}}],\"last\":{}}");
+    fixtures.add("[]");
+    fixtures.add("{}");
+    fixtures.add("{\"value\":null,\"values\":[null,1,null,\"null\"],\"object\":{\"a\":null},\"last\":null}");
+    fixtures.add("[0,-1,3.5,-2.25e3,1E-2,6.02E+23,123456789012,1.0,true,false]");
+    fixtures.add(" \n\t{ \"spaced\" : [ 1 , { \"a\" : \"b\" } ] , \"skipped\" : { } } \r\n");
+    fixtures.add("{\"skipObject\":{\"a\":[1,{\"b\":\"\\\"}]\"}],\"c\":{},\"d\":null},"
+        + "\"skipArray\":[[],[{}],\"]\",[[[true]]]],\"skipString\":\"{[\\\\\",\"skipNumber\":-1.5e-3,"
+        + "\"skipNull\":null,\"skipEmpty\":{},\"kept\":{\"skipInner\":[{\"x\":1}],\"y\":\"z\"}}");
+    //moves every kind of value across the end of the buffer, one character at a time
+    String straddlingValues = "\"name\\u00e9\":\"a\\u00e9\\n\\\"\\ud83d\\ude00b\",\"number\":-12345.678e2,"
+        + "\"integer\":1234567,\"flag\":true,\"nothing\":null,\"empty\":{},"
+        + "\"skipNested\":{\"deep\":[[\"a\\\"]\",{\"k\":1e5}],{}]},\"after\":[1,\"\\\\\"]";
+    for(int shift = 0; shift < straddlingValues.length() + 8; shift++) {
+      int padding = PARSER_BUFFER_SIZE - "{\"pad\":\"".length() - "\",".length() - straddlingValues.length() + shift;
+      fixtures.add("{\"pad\":\"" + "x".repeat(padding) + "\"," + straddlingValues + "}");
+    }
+
+    int failures = 0;
+    for(int i = 0; i < fixtures.size(); i++) {
+      String json = fixtures.get(i);
+      Object expected = fromOrgJson(new JSONTokener(json).nextValue());
+      for(boolean trickle : new boolean[] {false, true}) {
+        String reader = trickle ? "trickling reader" : "whole reader";
+        try {
+          JsonPullParser parser = new JsonPullParser(trickle ? new TrickleReader(json) : new StringReader(json));
+          Object actual = read(parser);
+          if(parser.peek() != JsonPullParser.Token.END_DOCUMENT) {
+            failures++;
+            System.out.println("Fixture " + i + " (" + reader + "): content left after the value");
+          }
+          else if(!expected.equals(actual)) {
+            failures++;
+            System.out.println("Fixture " + i + " (" + reader + "): expected " + abbreviate(expected)
+                + " but was " + abbreviate(actual));
+          }
+        }
+        catch (IOException | RuntimeException e) {
+          failures++;
+          System.out.println("Fixture " + i + " (" + reader + "): " + e);
+        }
+      }
+    }
+    failures += checkSkipAtNames();
+
+    if(failures > 0) {
+      System.out.println(failures + " checks failed");
+      System.exit(1);
+    }
+    System.out.println("All " + (fixtures.size() * 2 + 1) + " checks passed");
+  }
+
+  /**
+   * Skips every property of an object with skipValue() while the parser is positioned at its name,
+   * which has to skip the name together with its value.
+   * @return an int containing the number of failed checks; 0 or 1
+   */
+  private static int checkSkipAtNames() {
+    String json = "{\"a\":{\"x\":[1,2,{\"y\":\"}\"}]},\"b\":\"]\",\"c\":[[],{}],\"d\":null}[\"after\"]";
+    try {
+      JsonPullParser parser = new JsonPullParser(new StringReader(json));
+      parser.beginObject();
+      int skipped = 0;
+      while(parser.hasNext()) {
+        parser.skipValue();
+        skipped++;
+      }
+      parser.endObject();
+      Object after = read(parser);
+      if(skipped != 4 || !after.equals(List.of("after"))) {
+        System.out.println("Skipping at names: skipped " + skipped + " properties, then read " + after);
+        return 1;
+      }
+      return 0;
+    }
+    catch (IOException | RuntimeException e) {
+      System.out.println("Skipping at names: " + e);
+      return 1;
+    }
+  }
+
+  /**
+   * Reads the next value with the pull parser, skipping all properties whose names start with SKIP_PREFIX.
+   * @return a Map, List, String, Double or Boolean; JSONObject.NULL for null
+   */
+  private static Object read(JsonPullParser parser) throws IOException {
+    switch(parser.peek()) {
+      case BEGIN_OBJECT:
+        Map<String, Object> object = new LinkedHashMap<>();
+        parser.beginObject();
+        while(parser.hasNext()) {
+          String name = parser.nextName();
+          if(name.startsWith(SKIP_PREFIX)) {
+            parser.skipValue();
+          }
+          else {
+            object.put(name, read(parser));
+          }
+        }
+        parser.endObject();
+        return object;
+      case BEGIN_ARRAY:
+        List<Object> array = new ArrayList<>();
+        parser.beginArray();
+        while(parser.hasNext()) {
+          array.add(read(parser));
+        }
+        parser.endArray();
+        return array;
+      case STRING:
+        return parser.nextString();
+      case NUMBER:
+        return parser.nextDouble();
+      case BOOLEAN:
+        return parser.nextBoolean();
+      case NULL:
+        parser.nextNull();
+        return JSONObject.NULL;
+      default:
+        throw new IOException("Unexpected " + parser.peek());
+    }
+  }
+
+  /**
+   * Converts a value read by org.json like read() does, leaving out properties whose names start with SKIP_PREFIX.
+   */
+  private static Object fromOrgJson(Object value) {
+    if(value instanceof JSONObject) {
+      JSONObject jsonObject = (JSONObject) value;
+      Map<String, Object> object = new LinkedHashMap<>();
+      for(String name : jsonObject.keySet()) {
+        if(!name.startsWith(SKIP_PREFIX)) {
+          object.put(name, fromOrgJson(jsonObject.get(name)));
+        }
+      }
+      return object;
+    }
+    if(value instanceof JSONArray) {
+      List<Object> array = new ArrayList<>();
+      for(Object element : (JSONArray) value) {
+        array.add(fromOrgJson(element));
+      }
+      return array;
+    }
+    if(value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+    return value;
+  }
+
+  private static String abbreviate(Object value) {
+    String text = String.valueOf(value);
+    return text.length() > 200 ? text.substring(0, 100) + "..." + text.substring(text.length() - 100) : text;
+  }
+}
@@ -0,0 +1,415 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Local stand-in for the parts of the Warframe Market API that the program uses, serving a generated profile
+ * of sell orders and generated item details. Like the real API it answers after a configurable latency,
+ * rejects requests beyond the permitted rate with 429 and hands out a new JWT in the Authorization header
+ * of every authenticated response; every JWT it has handed out stays valid.
+ * Point the program at it by setting baseUrl in user_info.properties to the printed URL, or start it from
+ * a harness such as UpdateLoadHarness.
+ * Served endpoints: GET /v1/items, GET /v1/items/{url_name}, GET /v1/profile/{user}/orders
+ * and GET/PUT /v1/profile/orders/{id}
+ */
+public class MarketStandInServer {
+  public static final String USER_NAME = "bench_user";
+  //orders of the profile are spread over at most this many distinct items, like in DecisionPathBenchmark
+  private static final int MAX_DISTINCT_ITEMS = 2500;
+  private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+  private final HttpServer server;
+  private final ExecutorService handlerExecutor;
+  private final long latencyMillis;
+  private final int maxRequestsPerSecond;
+  //generated items are grouped into sets of this many consecutive items
+  private final int itemsPerSet;
+  private final List<String> itemUrlNames = new ArrayList<>();
+  private final String itemsJson;
+  //all orders of the profile by order ID, in profile order; guarded by itself
+  private final Map<String, JSONObject> ordersById = new LinkedHashMap<>();
+  private final Set<String> issuedTokens = ConcurrentHashMap.newKeySet();
+  private final String initialToken;
+  //arrival times of the requests accepted within the last second; guarded by itself
+  private final ArrayDeque<Long> recentRequestNanos = new ArrayDeque<>();
+  private final AtomicLong tokenCounter = new AtomicLong();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rateLimitedRequests = new AtomicLong();
+  private final AtomicLong orderUpdates = new AtomicLong();
+  //wall clock time of the first request since the last reset; 0 if none arrived yet
+  private final AtomicLong firstRequestMillis = new AtomicLong();
+
+  /**
+   * Creates a server on the loopback interface with a generated profile; it has to be started with start().
+   * @param port the port to listen on; 0 to pick any free port
+   * @param orderCount the number of sell orders within the generated profile
+   * @param latencyMillis the time in milliseconds to wait before answering a request; jittered by up to 50%
+   * @param maxRequestsPerSecond the number of requests accepted within any second before answering with 429
+   * @throws IOException if the server could not bind to the port
+   */
+  public MarketStandInServer(int port, int orderCount, long latencyMillis, int maxRequestsPerSecond)
+      throws IOException {
+    this(port, orderCount, latencyMillis, maxRequestsPerSecond, 1);
+  }
+
+  /**
+   * Creates a server like the other constructor, whose items are grouped into sets. The details of every item
+   * list all items of its set, like those of the weapon parts or augment mods of a Syndicate do.
+   * @param itemsPerSet the number of consecutive generated items that make up a set; 1 for items without a set
+   */
+  public MarketStandInServer(int port, int orderCount, long latencyMillis, int maxRequestsPerSecond, int itemsPerSet)
+      throws IOException {
+    this.latencyMillis = latencyMillis;
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.itemsPerSet = itemsPerSet;
+
+    int distinctItems = getDistinctItems(orderCount);
+    JSONArray jsonItems = new JSONArray();
+    for(int i = 0; i < distinctItems; i++) {
+      String urlName = BenchmarkFixtures.itemUrlName(i);
+      itemUrlNames.add(urlName);
+      JSONObject jsonItem = new JSONObject();
+      jsonItem.put("id", String.format("%024x", (long) i));
+      jsonItem.put("url_name", urlName);
+      jsonItem.put("item_name", urlName);
+      jsonItem.put("thumb", "items/images/en/thumbs/" + urlName + ".128x128.png");
+      jsonItems.put(jsonItem);
+    }
+    itemsJson = new JSONObject().put("payload", new JSONObject().put("items", jsonItems)).toString();
+
+    JSONArray jsonSellOrders = new JSONObject(BenchmarkFixtures.profileOrdersJson(orderCount, distinctItems, 11))
+        .getJSONObject("payload").getJSONArray("sell_orders");
+    for(int i = 0; i < jsonSellOrders.length(); i++) {
+      JSONObject order = jsonSellOrders.getJSONObject(i);
+      ordersById.put(order.getString("id"), order);
+    }
+    initialToken = issueToken();
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    //requests wait for the injected latency, so every request in flight needs a thread of its own
+    handlerExecutor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "stand-in-server");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(handlerExecutor);
+    server.createContext("/v1", this::handle);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if(args.length > 3) {
+      System.out.println("Usage: MarketStandInServer [port] [orderCount] [latencyMillis]");
+      return;
+    }
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    int orderCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 100;
+
+    MarketStandInServer server = new MarketStandInServer(port, orderCount, latencyMillis, 3);
+    server.start();
+    System.out.println("Serving " + orderCount + " orders of user " + USER_NAME + " at " + server.getBaseUrl());
+    System.out.println("Initial JWT: " + server.getInitialToken());
+  }
+
+  /**
+   * @param orderCount the number of sell orders within a generated profile
+   * @return the number of distinct items that the orders of the profile are spread over
+   */
+  public static int getDistinctItems(int orderCount) {
+    return Math.min(MAX_DISTINCT_ITEMS, Math.max(1, orderCount / 4));
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+    handlerExecutor.shutdownNow();
+  }
+
+  /**
+   * @return a String containing the URL that the program's baseUrl property has to be set to
+   */
+  public String getBaseUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v1";
+  }
+
+  public String getInitialToken() {
+    return initialToken;
+  }
+
+  public List<String> getItemUrlNames() {
+    return itemUrlNames;
+  }
+
+  /**
+   * @param urlName the url_name of a generated item
+   * @return a JSON String containing the details that the server answers with for the item; null if it is unknown
+   */
+  public String getItemDetailsJson(String urlName) {
+    int index = itemUrlNames.indexOf(urlName);
+    if(index < 0) {
+      return null;
+    }
+    int firstIndex = index - index % itemsPerSet;
+    return BenchmarkFixtures.itemSetDetailsJson(firstIndex, Math.min(itemsPerSet, itemUrlNames.size() - firstIndex),
+        index);
+  }
+
+  /**
+   * @return a List containing a copy of every order of the profile in its current state
+   */
+  public List<JSONObject> getOrders() {
+    List<JSONObject> orders = new ArrayList<>();
+    synchronized(ordersById) {
+      for(JSONObject order : ordersById.values()) {
+        orders.add(new JSONObject(order.toString()));
+      }
+    }
+    return orders;
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getRateLimitedRequests() {
+    return rateLimitedRequests.get();
+  }
+
+  public long getOrderUpdates() {
+    return orderUpdates.get();
+  }
+
+  /**
+   * @return the wall clock time in milliseconds at which the first request since the last call of
+   * resetFirstRequestMillis() arrived; 0 if none has arrived yet
+   */
+  public long getFirstRequestMillis() {
+    return firstRequestMillis.get();
+  }
+
+  public void resetFirstRequestMillis() {
+    firstRequestMillis.set(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      requests.incrementAndGet();
+      firstRequestMillis.compareAndSet(0, System.currentTimeMillis());
+      if(!tryAcceptRequest()) {
+        rateLimitedRequests.incrementAndGet();
+        //the API only tells in whole seconds when to try again
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendResponse(exchange, 429, "{\"error\": \"Too many requests\"}");
+        return;
+      }
+      injectLatency();
+      route(exchange);
+    }
+    catch (RuntimeException e) {
+      sendResponse(exchange, 500, new JSONObject().put("error", String.valueOf(e.getMessage())).toString());
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private void route(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String[] path = exchange.getRequestURI().getPath().split("/");
+    //path[0] is empty and path[1] is "v1"
+    if(path.length == 3 && path[2].equals("items") && method.equals("GET")) {
+      sendCacheableResponse(exchange, itemsJson);
+    }
+    else if(path.length == 4 && path[2].equals("items") && method.equals("GET")) {
+      handleItem(exchange, path[3]);
+    }
+    else if(path.length == 5 && path[2].equals("profile") && path[4].equals("orders") && method.equals("GET")) {
+      handleProfileOrders(exchange, path[3]);
+    }
+    else if(path.length == 5 && path[2].equals("profile") && path[3].equals("orders")) {
+      if(method.equals("GET")) {
+        handleOrder(exchange, path[4], null);
+      }
+      else if(method.equals("PUT")) {
+        handleOrder(exchange, path[4], readRequestBody(exchange));
+      }
+      else {
+        sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+      }
+    }
+    else {
+      sendResponse(exchange, 404, "{\"error\": \"Not found\"}");
+    }
+  }
+
+  private void handleItem(HttpExchange exchange, String urlName) throws IOException {
+    String itemDetailsJson = getItemDetailsJson(urlName);
+    if(itemDetailsJson == null) {
+      sendResponse(exchange, 404, "{\"error\": {\"url_name\": [\"app.item.not_found\"]}}");
+      return;
+    }
+    //the same seeds as in DecisionPathBenchmark, so that both see the same drop sources
+    sendCacheableResponse(exchange, itemDetailsJson);
+  }
+
+  private void handleProfileOrders(HttpExchange exchange, String userName) throws IOException {
+    if(!userName.equals(USER_NAME)) {
+      sendResponse(exchange, 404, "{\"error\": {\"user_name\": [\"app.profile.not_found\"]}}");
+      return;
+    }
+    StringBuilder json = new StringBuilder("{\"payload\": {\"buy_orders\": [], \"sell_orders\": [");
+    synchronized(ordersById) {
+      boolean first = true;
+      for(JSONObject order : ordersById.values()) {
+        if(!first) {
+          json.append(", ");
+        }
+        json.append(order.toString());
+        first = false;
+      }
+    }
+    json.append("]}}");
+    sendResponse(exchange, 200, json.toString());
+  }
+
+  /**
+   * Answers with an order after applying the passed update to it, if any.
+   * @param jsonOrderValues a JSON String containing the values to update the order with; null for a GET
+   */
+  private void handleOrder(HttpExchange exchange, String orderId, String jsonOrderValues) throws IOException {
+    String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+    if(authorization == null || !authorization.startsWith("JWT ") || !issuedTokens.contains(authorization.substring(4))) {
+      sendResponse(exchange, 401, "{\"error\": {\"request\": [\"app.errors.unauthorized\"]}}");
+      return;
+    }
+
+    String jsonOrder;
+    synchronized(ordersById) {
+      JSONObject order = ordersById.get(orderId);
+      if(order == null) {
+        sendResponse(exchange, 404, "{\"error\": {\"order_id\": [\"app.order.not_exist\"]}}");
+        return;
+      }
+      if(jsonOrderValues != null) {
+        JSONObject orderValues;
+        try {
+          orderValues = new JSONObject(jsonOrderValues);
+        }
+        catch (JSONException e) {
+          sendResponse(exchange, 400, new JSONObject().put("error", e.getMessage()).toString());
+          return;
+        }
+        for(String key : new String[] {"platinum", "quantity", "visible", "mod_rank"}) {
+          if(orderValues.has(key)) {
+            order.put(key, orderValues.get(key));
+          }
+        }
+        orderUpdates.incrementAndGet();
+      }
+      jsonOrder = order.toString();
+    }
+    exchange.getResponseHeaders().set("Authorization", "JWT " + issueToken());
+    sendResponse(exchange, 200, "{\"payload\": {\"order\": " + jsonOrder + "}}");
+  }
+
+  /**
+   * Decides whether a request arriving now stays within the permitted rate and records it if it does.
+   * @return true if fewer than maxRequestsPerSecond requests were accepted within the last second
+   */
+  private boolean tryAcceptRequest() {
+    long now = System.nanoTime();
+    synchronized(recentRequestNanos) {
+      while(!recentRequestNanos.isEmpty() && now - recentRequestNanos.peekFirst() >= RATE_WINDOW_NANOS) {
+        recentRequestNanos.pollFirst();
+      }
+      if(recentRequestNanos.size() >= maxRequestsPerSecond) {
+        return false;
+      }
+      recentRequestNanos.addLast(now);
+      return true;
+    }
+  }
+
+  private void injectLatency() {
+    if(latencyMillis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(latencyMillis + ThreadLocalRandom.current().nextLong(latencyMillis / 2 + 1));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String issueToken() {
+    String token = "standin." + tokenCounter.incrementAndGet() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    issuedTokens.add(token);
+    return token;
+  }
+
+  private static String readRequestBody(HttpExchange exchange) throws IOException {
+    try(InputStream body = exchange.getRequestBody()) {
+      return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Sends a JSON response that never changes with an ETag like the API does, or answers with 304
+   * if the client already has the response.
+   */
+  private static void sendCacheableResponse(HttpExchange exchange, String json) throws IOException {
+    String eTag = "\"" + Integer.toHexString(json.hashCode()) + "\"";
+    exchange.getResponseHeaders().set("ETag", eTag);
+    if(eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    sendResponse(exchange, 200, json);
+  }
+
+  /**
+   * Sends a JSON response, gzip-encoded if the client accepts it.
+   */
+  private static void sendResponse(HttpExchange exchange, int statusCode, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if(acceptEncoding != null && acceptEncoding.contains("gzip")) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+      try(GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(body);
+      }
+      body = compressed.toByteArray();
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    }
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(statusCode, body.length);
+    try(OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+}
@@ -0,0 +1,272 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Measures how long one-shot commands take from starting the JVM, once without and once with an
+ * application class data sharing (AppCDS) archive:
+ * the time until the first request of an 'update' arrives at a MarketStandInServer, the total time
+ * of that 'update', and the total time of a 'status', which makes no requests at all.
+ * Every configuration is run repeatedly within the same temporary directory, like a script calling
+ * the program again and again would; the median of all runs is reported.
+ * For comparison, the same commands are then sent to the control API of a single program running as daemon.
+ * Since class data sharing only archives classes from JAR files, directories on the classpath are
+ * packed into JAR files first, like the program is shipped.
+ * Run with the json-java library and the program classes on the classpath:
+ * java -cp out:lib/json-java.jar StartupBenchmark [runs]
+ */
+public class StartupBenchmark {
+  private static final int ORDER_COUNT = 20;
+  private static final String CONTROL_TOKEN = "startup-benchmark";
+
+  public static void main(String[] args) throws Exception {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    //no rate limit, so that consecutive runs are not slowed down by 429 responses
+    MarketStandInServer server = new MarketStandInServer(0, ORDER_COUNT, 0, Integer.MAX_VALUE);
+    server.start();
+    Path workingDirectory = Files.createTempDirectory("startup-benchmark");
+    try {
+      writeProperties(workingDirectory, server);
+      String classPath = getJarClassPath(workingDirectory);
+      runConfigurations(workingDirectory, classPath, server, runs);
+      measureControlApi(workingDirectory, classPath, runs);
+    }
+    finally {
+      server.stop();
+      deleteRecursively(workingDirectory.toFile());
+    }
+  }
+
+  private static void runConfigurations(Path workingDirectory, String classPath, MarketStandInServer server,
+      int runs) throws IOException, InterruptedException {
+    //the first update looks up all items and updates orders; afterwards every update only lists the orders
+    runCommand(workingDirectory, classPath, Collections.emptyList(), "update");
+
+    measure("default", workingDirectory, classPath, Collections.emptyList(), server, runs);
+    if(Runtime.version().feature() >= 13) {
+      //the archive is dumped at the end of a run, so that it holds every class that an update loads
+      String archive = workingDirectory.resolve("app.jsa").toString();
+      runCommand(workingDirectory, classPath, Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive),
+          "update");
+      measure("AppCDS archive", workingDirectory, classPath,
+          Collections.singletonList("-XX:SharedArchiveFile=" + archive), server, runs);
+      //short runs spend much of their time compiling code that runs only a few times
+      measure("AppCDS, C1 only", workingDirectory, classPath,
+          Arrays.asList("-XX:SharedArchiveFile=" + archive, "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC"),
+          server, runs);
+    }
+    else {
+      System.out.println("Dynamic AppCDS archives require Java 13 or later");
+    }
+  }
+
+  private static void measure(String name, Path workingDirectory, String classPath, List<String> jvmOptions,
+      MarketStandInServer server, int runs) throws IOException, InterruptedException {
+    long[] firstRequestMillis = new long[runs];
+    long[] updateMillis = new long[runs];
+    long[] statusMillis = new long[runs];
+    for(int i = 0; i < runs; i++) {
+      server.resetFirstRequestMillis();
+      long startMillis = System.currentTimeMillis();
+      runCommand(workingDirectory, classPath, jvmOptions, "update");
+      updateMillis[i] = System.currentTimeMillis() - startMillis;
+      firstRequestMillis[i] = server.getFirstRequestMillis() - startMillis;
+
+      startMillis = System.currentTimeMillis();
+      runCommand(workingDirectory, classPath, jvmOptions, "status");
+      statusMillis[i] = System.currentTimeMillis() - startMillis;
+    }
+    System.out.printf("%-16s start to first request %5d ms, update %5d ms, status %5d ms (median of %d runs)%n",
+        name, median(firstRequestMillis), median(updateMillis), median(statusMillis), runs);
+  }
+
+  /**
+   * Measures 'update', 'status' and 'syndicate' sent to the control API of a program that keeps running.
+   */
+  private static void measureControlApi(Path workingDirectory, String classPath, int runs)
+      throws IOException, InterruptedException {
+    int port;
+    try(ServerSocket socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+      port = socket.getLocalPort();
+    }
+    //the properties have been written by the previous runs, so only the control API is added
+    Path propertyFile = workingDirectory.resolve("user_info.properties");
+    Properties properties = new Properties();
+    try(FileInputStream fis = new FileInputStream(propertyFile.toFile())) {
+      properties.load(fis);
+    }
+    properties.setProperty("controlPort", String.valueOf(port));
+    properties.setProperty("controlToken", CONTROL_TOKEN);
+    try(FileOutputStream fos = new FileOutputStream(propertyFile.toFile())) {
+      properties.store(fos, null);
+    }
+
+    Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+        "-cp", classPath, "Main", "daemon")
+        .directory(workingDirectory.toFile())
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .start();
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      String baseUrl = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port;
+      long deadlineMillis = System.currentTimeMillis() + 30_000;
+      while(sendControlRequest(client, baseUrl, "GET", "/status") != 200) {
+        if(System.currentTimeMillis() > deadlineMillis) {
+          throw new IllegalStateException("The control API did not come up");
+        }
+        Thread.sleep(50);
+      }
+      //waits for the update that the daemon starts with
+      sendControlRequest(client, baseUrl, "POST", "/update");
+
+      long[] updateMillis = new long[runs];
+      long[] statusMillis = new long[runs];
+      long[] syndicateMillis = new long[runs];
+      for(int i = 0; i < runs; i++) {
+        long startMillis = System.currentTimeMillis();
+        requireOk(sendControlRequest(client, baseUrl, "POST", "/update"), "update");
+        updateMillis[i] = System.currentTimeMillis() - startMillis;
+
+        startMillis = System.currentTimeMillis();
+        requireOk(sendControlRequest(client, baseUrl, "GET", "/status"), "status");
+        statusMillis[i] = System.currentTimeMillis() - startMillis;
+
+        //the visibility that Red Veil already has, so that the following updates have nothing more to do
+        startMillis = System.currentTimeMillis();
+        requireOk(sendControlRequest(client, baseUrl, "POST", "/syndicate/veil/invisible"), "syndicate");
+        syndicateMillis[i] = System.currentTimeMillis() - startMillis;
+      }
+      System.out.printf("%-16s update %5d ms, status %5d ms, syndicate %5d ms (median of %d runs)%n",
+          "control API", median(updateMillis), median(statusMillis), median(syndicateMillis), runs);
+    }
+    finally {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  /**
+   * @return the status code of the response; 0 if the control API could not be reached
+   */
+  private static int sendControlRequest(HttpClient client, String baseUrl, String method, String path)
+      throws InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+        .header("X-Control-Token", CONTROL_TOKEN)
+        .method(method, HttpRequest.BodyPublishers.noBody())
+        .build();
+    try {
+      return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+    catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private static void requireOk(int statusCode, String command) {
+    if(statusCode != 200) {
+      throw new IllegalStateException("'" + command + "' answered with " + statusCode);
+    }
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if(children != null) {
+      for(File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static void runCommand(Path workingDirectory, String classPath, List<String> jvmOptions, String command)
+      throws IOException, InterruptedException {
+    List<String> processCommand = new ArrayList<>();
+    processCommand.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    processCommand.addAll(jvmOptions);
+    processCommand.add("-cp");
+    processCommand.add(classPath);
+    processCommand.add("Main");
+    processCommand.add(command);
+    Process process = new ProcessBuilder(processCommand)
+        .directory(workingDirectory.toFile())
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .start();
+    if(process.waitFor() != 0) {
+      throw new IllegalStateException("'" + command + "' exited with " + process.exitValue());
+    }
+  }
+
+  private static void writeProperties(Path workingDirectory, MarketStandInServer server) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("baseUrl", server.getBaseUrl());
+    properties.setProperty("userName", MarketStandInServer.USER_NAME);
+    properties.setProperty("jwt", server.getInitialToken());
+    for(Syndicate syndicate : Syndicate.values()) {
+      properties.setProperty(syndicate.getPropertyKey(), String.valueOf(syndicate != Syndicate.RED_VEIL));
+    }
+    try(FileOutputStream fos = new FileOutputStream(workingDirectory.resolve("user_info.properties").toFile())) {
+      properties.store(fos, null);
+    }
+  }
+
+  /**
+   * Packs every directory on the classpath of this JVM into a JAR file within the passed directory.
+   * @return the classpath with absolute paths to the JAR files
+   */
+  private static String getJarClassPath(Path jarDirectory) throws IOException {
+    StringBuilder classPath = new StringBuilder();
+    String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+    for(int i = 0; i < entries.length; i++) {
+      File entry = new File(entries[i]).getAbsoluteFile();
+      if(entry.isDirectory()) {
+        File jar = jarDirectory.resolve("classpath" + i + ".jar").toFile();
+        try(JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+          addToJar(jos, entry, "");
+        }
+        entry = jar;
+      }
+      if(classPath.length() > 0) {
+        classPath.append(File.pathSeparator);
+      }
+      classPath.append(entry.getPath());
+    }
+    return classPath.toString();
+  }
+
+  private static void addToJar(JarOutputStream jos, File directory, String prefix) throws IOException {
+    for(File file : directory.listFiles()) {
+      if(file.isDirectory()) {
+        addToJar(jos, file, prefix + file.getName() + "/");
+      }
+      else {
+        jos.putNextEntry(new JarEntry(prefix + file.getName()));
+        Files.copy(file.toPath(), jos);
+        jos.closeEntry();
+      }
+    }
+  }
+
+  private static long median(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+}
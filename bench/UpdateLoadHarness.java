@@ -0,0 +1,281 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+
+/**
+ * Runs updateAffectedOrders() end to end against a MarketStandInServer for generated profiles of different
+ * sizes and reports the wall time and the number of orders handled per second.
+ * Every profile size runs in a fresh JVM within an empty temporary directory, so that neither the files
+ * the program writes nor its in-memory state carry over from one size to the next.
+ * For every size, a first update starts with an empty item cache, and a second update follows after
+ * Red Veil has been set visible again. Then Red Veil is hidden and Cephalon Suda shown at the same time,
+ * once without and once with hiding orders first, to see how long orders stay visible that shouldn't be.
+ * Finally, all items are looked up again after emptying the item cache, once without and once with the responses
+ * of the previous lookups in the HTTP cache, and Red Veil is swapped for Cephalon Suda once more after emptying
+ * the item cache, once right away and once after the prefetch of the idle program looked up all items again.
+ * Run with the json-java library and the program classes on the classpath:
+ * java -cp out:lib/json-java.jar UpdateLoadHarness [--latency latencyMillis] [--set-size itemsPerSet] [orderCount...]
+ * With a set size above 1, the generated items are grouped into sets whose details list all of their items.
+ * Since the stand-in server allows 3 requests per second like the real API, 1000 orders take several minutes.
+ */
+public class UpdateLoadHarness {
+  private static final String SINGLE_RUN_ARG = "--single";
+  private static final String LATENCY_ARG = "--latency";
+  private static final String SET_SIZE_ARG = "--set-size";
+  //directory of the HttpResponseCache within the working directory
+  private static final String HTTP_CACHE_DIRECTORY = "http_cache";
+  //how often the orders on the server are checked for orders that are visible but shouldn't be
+  private static final long POLL_MILLIS = 50;
+
+  public static void main(String[] args) throws Exception {
+    long latencyMillis = 100;
+    int itemsPerSet = 1;
+    List<Integer> orderCounts = new ArrayList<>();
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals(SINGLE_RUN_ARG)) {
+        runSingle(Integer.parseInt(args[i + 1]), Long.parseLong(args[i + 2]), Integer.parseInt(args[i + 3]));
+        return;
+      }
+      else if(args[i].equals(LATENCY_ARG)) {
+        latencyMillis = Long.parseLong(args[++i]);
+      }
+      else if(args[i].equals(SET_SIZE_ARG)) {
+        itemsPerSet = Integer.parseInt(args[++i]);
+      }
+      else {
+        orderCounts.add(Integer.parseInt(args[i]));
+      }
+    }
+    if(orderCounts.isEmpty()) {
+      orderCounts.add(100);
+      orderCounts.add(1000);
+    }
+
+    for(int orderCount : orderCounts) {
+      runInFreshJVM(orderCount, latencyMillis, itemsPerSet);
+    }
+  }
+
+  /**
+   * Starts a JVM with the same classpath within a new temporary directory that runs a single profile size.
+   */
+  private static void runInFreshJVM(int orderCount, long latencyMillis, int itemsPerSet)
+      throws IOException, InterruptedException {
+    Path workingDirectory = Files.createTempDirectory("update-load-harness");
+    //relative classpath entries have to be resolved before changing the working directory
+    StringBuilder classPath = new StringBuilder();
+    for(String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if(classPath.length() > 0) {
+        classPath.append(File.pathSeparator);
+      }
+      classPath.append(new File(entry).getAbsolutePath());
+    }
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+    Process process = new ProcessBuilder(java, "-cp", classPath.toString(), UpdateLoadHarness.class.getName(),
+        SINGLE_RUN_ARG, String.valueOf(orderCount), String.valueOf(latencyMillis), String.valueOf(itemsPerSet))
+        .directory(workingDirectory.toFile())
+        .inheritIO()
+        .start();
+    int exitCode = process.waitFor();
+    if(exitCode != 0) {
+      System.out.println("Run for " + orderCount + " orders exited with " + exitCode);
+    }
+    deleteRecursively(workingDirectory.toFile());
+  }
+
+  private static void runSingle(int orderCount, long latencyMillis, int itemsPerSet) throws IOException {
+    MarketStandInServer server = new MarketStandInServer(0, orderCount, latencyMillis, 3, itemsPerSet);
+    server.start();
+
+    PropertyManager.init();
+    PropertyManager.setBaseUrl(server.getBaseUrl());
+    Account account = PropertyManager.getDefaultAccount();
+    account.setUserName(MarketStandInServer.USER_NAME);
+    account.setJWT(server.getInitialToken());
+    account.setVisible(Syndicate.PERRIN_SEQUENCE, false);
+    account.setVisible(Syndicate.RED_VEIL, false);
+    account.setVisible(Syndicate.CEPHALON_SUDA, false);
+    APIRequestManager.init();
+    ItemCache.init();
+
+    System.out.println("== " + orderCount + " orders over " + MarketStandInServer.getDistinctItems(orderCount)
+        + " items in sets of " + itemsPerSet + ", " + latencyMillis + " ms latency");
+    Map<String, Integer> syndicateMasks = getSyndicateMasks(server);
+    runUpdate("first update", orderCount, server, syndicateMasks);
+    account.setVisible(Syndicate.RED_VEIL, true);
+    runUpdate("after setting Red Veil visible", orderCount, server, syndicateMasks);
+    for(boolean hideOrdersFirst : new boolean[] {false, true}) {
+      PropertyManager.setHideOrdersFirst(hideOrdersFirst);
+      account.setVisible(Syndicate.RED_VEIL, false);
+      account.setVisible(Syndicate.CEPHALON_SUDA, true);
+      runUpdate("Veil hidden, Suda shown, " + (hideOrdersFirst ? "hide first" : "in order"), orderCount, server,
+          syndicateMasks);
+      //back to the previous settings for the next run, without measuring
+      account.setVisible(Syndicate.RED_VEIL, true);
+      account.setVisible(Syndicate.CEPHALON_SUDA, false);
+      JSONProcessor.updateAffectedOrders(account);
+    }
+    //once the item cache expired, every item is looked up again; the responses can be revalidated then
+    for(boolean httpCache : new boolean[] {false, true}) {
+      if(!httpCache) {
+        deleteRecursively(new File(HTTP_CACHE_DIRECTORY));
+      }
+      ItemCache.init();
+      runIndexRebuild("item cache expired, " + (httpCache ? "HTTP cache" : "no HTTP cache"), server);
+    }
+    //the same change of Syndicates after the item cache expired, once right away and once after the program
+    //was left idle long enough for the prefetch to look up all items again
+    for(boolean prefetch : new boolean[] {false, true}) {
+      ItemCache.init();
+      if(prefetch) {
+        long idleStartNanos = System.nanoTime();
+        PrefetchWarmer.start();
+        awaitCached(server.getItemUrlNames());
+        System.out.printf("Prefetch looked up all items within %.1f s%n", (System.nanoTime() - idleStartNanos) / 1e9);
+      }
+      account.setVisible(Syndicate.RED_VEIL, false);
+      account.setVisible(Syndicate.CEPHALON_SUDA, true);
+      runUpdate("item cache expired, " + (prefetch ? "prefetched" : "not prefetched"), orderCount, server,
+          syndicateMasks);
+      account.setVisible(Syndicate.RED_VEIL, true);
+      account.setVisible(Syndicate.CEPHALON_SUDA, false);
+      JSONProcessor.updateAffectedOrders(account);
+    }
+    server.stop();
+  }
+
+  private static void runUpdate(String name, int orderCount, MarketStandInServer server,
+      Map<String, Integer> syndicateMasks) throws IOException {
+    long requestsBefore = server.getRequests();
+    long rateLimitedBefore = server.getRateLimitedRequests();
+    int ordersToHide = countWrongVisibilities(server, syndicateMasks, true);
+    ApiMetrics.reset();
+    long startNanos = System.nanoTime();
+    //watches for orders that are visible although none of their Syndicates are; the time the last one is seen
+    AtomicLong lastWronglyVisibleNanos = new AtomicLong(0);
+    AtomicBoolean updating = new AtomicBoolean(true);
+    Thread monitor = new Thread(() -> {
+      while(updating.get()) {
+        if(countWrongVisibilities(server, syndicateMasks, true) > 0) {
+          lastWronglyVisibleNanos.set(System.nanoTime() - startNanos);
+        }
+        try {
+          Thread.sleep(POLL_MILLIS);
+        }
+        catch (InterruptedException e) {
+          return;
+        }
+      }
+    });
+    monitor.start();
+    //the time from the start of the update until its first order has been updated
+    AtomicLong firstUpdateNanos = new AtomicLong(-1);
+    int updatedOrders = JSONProcessor.updateAffectedOrders(PropertyManager.getDefaultAccount(), progress -> {
+      if(progress.getEvent() == UpdateProgress.Event.ORDER_UPDATED) {
+        firstUpdateNanos.compareAndSet(-1, progress.getElapsedNanos());
+      }
+    });
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    updating.set(false);
+    try {
+      monitor.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    System.out.printf("%-36s %6d orders updated in %8.1f s, %8.1f orders/s, first after %6.1f s, "
+            + "%4d hidden after %6.1f s, %5d requests, %3d answered with 429, %d orders with wrong visibility%n",
+        name, updatedOrders, seconds, orderCount / seconds, firstUpdateNanos.get() / 1e9, ordersToHide,
+        lastWronglyVisibleNanos.get() / 1e9,
+        server.getRequests() - requestsBefore, server.getRateLimitedRequests() - rateLimitedBefore,
+        countWrongVisibilities(server, syndicateMasks, false));
+    System.out.println(ApiMetrics.getSummary());
+  }
+
+  /**
+   * Waits until all passed items are in the ItemCache.
+   */
+  private static void awaitCached(List<String> urlNames) {
+    for(String urlName : urlNames) {
+      while(ItemCache.get(urlName) == null) {
+        try {
+          Thread.sleep(POLL_MILLIS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds the Syndicate index for all orders of the profile, which looks up every item that isn't cached.
+   */
+  private static void runIndexRebuild(String name, MarketStandInServer server) {
+    long requestsBefore = server.getRequests();
+    long rateLimitedBefore = server.getRateLimitedRequests();
+    ApiMetrics.reset();
+    long startNanos = System.nanoTime();
+    SyndicateIndex syndicateIndex = JSONProcessor.indexOwnSellOrders(PropertyManager.getDefaultAccount());
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    System.out.printf("%-36s %6d items indexed in %8.1f s, %5d requests, %3d answered with 429%n",
+        name, syndicateIndex.size(), seconds, server.getRequests() - requestsBefore,
+        server.getRateLimitedRequests() - rateLimitedBefore);
+    System.out.println(ApiMetrics.getSummary());
+  }
+
+  /**
+   * Determines the Syndicates of every item on the server the same way the program does.
+   * @return a Map containing the Syndicate mask of every item by url_name
+   */
+  private static Map<String, Integer> getSyndicateMasks(MarketStandInServer server) throws IOException {
+    Map<String, Integer> syndicateMasks = new HashMap<>();
+    List<String> itemUrlNames = server.getItemUrlNames();
+    for(String urlName : itemUrlNames) {
+      ItemDetails itemDetails = ItemDetails.parse(server.getItemDetailsJson(urlName));
+      syndicateMasks.put(urlName, JSONProcessor.itemDropsFromSyndicates(itemDetails));
+    }
+    return syndicateMasks;
+  }
+
+  /**
+   * Checks the orders on the server against the visibility that the Syndicates of their items call for.
+   * @param onlyVisible whether only orders that are visible but should be invisible are counted
+   * @return the number of orders whose visibility differs
+   */
+  private static int countWrongVisibilities(MarketStandInServer server, Map<String, Integer> syndicateMasks,
+      boolean onlyVisible) {
+    int visibleSyndicateMask = PropertyManager.getDefaultAccount().getVisibleSyndicateMask();
+    int wrongVisibilities = 0;
+    for(JSONObject order : server.getOrders()) {
+      int syndicateMask = syndicateMasks.getOrDefault(order.getJSONObject("item").getString("url_name"), 0);
+      boolean visible = order.getBoolean("visible");
+      if(syndicateMask != 0 && (visible || !onlyVisible)
+          && visible != JSONProcessor.getTotalVisibility(syndicateMask, visibleSyndicateMask)) {
+        wrongVisibilities++;
+      }
+    }
+    return wrongVisibilities;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if(children != null) {
+      for(File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
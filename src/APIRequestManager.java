@@ -1,62 +1,177 @@
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.util.Date;
-import java.util.List;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Map;
-import javax.net.ssl.HttpsURLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 /**
- * Handles communication with the Warframe Market API with HTTPS requests and responses
+ * Handles communication with the Warframe Market API with HTTPS requests and responses.
+ * Every request is made on behalf of an Account; all accounts share the permitted request rate fairly.
+ * Requests wait for their turn in order of their RequestPriority, so order updates are sent before item lookups.
  */
 public class APIRequestManager {
-  private static final String BASE_URL = "https://api.warframe.market/v1";
-  //minimum time to wait (in milliseconds) between separate requests to Warframe Market API
-  //this comes from the constraint that only 3 requests per second should be made to
-  //the Warframe Market API
-  private static final long MIN_DELAY_BETWEEN_REQUESTS = 333;
-  //timestamp with millisecond precision
-  private static Date timestampLastAPIRequest;
+  //URL of the Warframe Market API, taken from the properties on init
+  private static String baseUrl;
+  //only 3 requests per second should be made to the Warframe Market API
+  private static final double MAX_REQUESTS_PER_SECOND = 3;
+  //the rate that throttled responses can't push the request rate below
+  private static final double MIN_REQUESTS_PER_SECOND = 0.25;
+  //maximum number of requests that may be in flight at the same time for each account;
+  //allows sending further requests at the permitted rate while earlier ones await their response
+  private static final int MAX_CONCURRENT_REQUESTS = 8;
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+  //requests that fail transiently are sent up to this many times in total
+  private static final int MAX_REQUEST_ATTEMPTS = 5;
+  //delay before the first retry; doubles with each further retry
+  private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+  //requests whose response asks to retry later than this are not retried, so the program doesn't seem stuck
+  private static final long MAX_RETRY_AFTER_MILLIS = 60_000;
+  private static FairRateLimiter rateLimiter;
+  private static AdaptiveRateController rateController;
+  //every account has threads of its own, so that the backlog of one account never holds up the requests of another
+  private static final Map<String, ExecutorService> requestExecutors = new ConcurrentHashMap<>();
+  //numbers asynchronous requests, so that those of the same priority start in the order they were made
+  private static final AtomicLong submittedRequests = new AtomicLong();
+  //endpoint names under which metrics are recorded
+  private static final String ORDER_ENDPOINT = "GET /profile/orders/{id}";
+  private static final String ORDER_UPDATE_ENDPOINT = "PUT /profile/orders/{id}";
+  private static final String ITEMS_ENDPOINT = "GET /items";
+  private static final String ITEM_ENDPOINT = "GET /items/{url_name}";
+  private static final String PROFILE_ORDERS_ENDPOINT = "GET /profile/{user}/orders";
+  //shared by all requests, so that connections and TLS sessions are kept alive and reused
+  private static HttpClient httpClient;
+  //initial size of the buffer that small response bodies are read into
+  private static final int INITIAL_BODY_BUFFER_SIZE = 8192;
+  //largest buffer kept for the next body; a rare large body must not pin its buffer to the thread forever
+  private static final int MAX_RETAINED_BODY_BUFFER_SIZE = 64 * 1024;
+  //per thread buffer for reading small response bodies, such as errors, without reallocating it each time
+  private static final ThreadLocal<byte[]> bodyBuffer =
+      ThreadLocal.withInitial(() -> new byte[INITIAL_BODY_BUFFER_SIZE]);
+
+  /**
+   * An asynchronous request waiting for a thread of its account.
+   * Waiting requests are started in order of their priority, and in the order they were made within a priority.
+   */
+  private static class PrioritizedRequest implements Runnable, Comparable<PrioritizedRequest> {
+    private final RequestPriority priority;
+    private final long sequenceNumber;
+    private final Runnable request;
+
+    private PrioritizedRequest(RequestPriority priority, Runnable request) {
+      this.priority = priority;
+      this.sequenceNumber = submittedRequests.getAndIncrement();
+      this.request = request;
+    }
+
+    @Override
+    public void run() {
+      request.run();
+    }
+
+    @Override
+    public int compareTo(PrioritizedRequest other) {
+      int byPriority = priority.compareTo(other.priority);
+      return byPriority != 0 ? byPriority : Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+
+  /**
+   * The result of an asynchronous request, which can be withdrawn for as long as the request waits for its turn.
+   * @param <T> the type of the result
+   */
+  public static class QueuedRequest<T> extends CompletableFuture<T> {
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    /**
+     * Cancels the request if it hasn't been started yet. Unlike cancel(), never lets a request that is already
+     * being made go to waste, since its result can still be used then.
+     * @return true if the request has been cancelled and will not be made;
+     * false if it is already being made or has completed
+     */
+    public boolean cancelIfQueued() {
+      return started.compareAndSet(false, true) && cancel(false);
+    }
+
+    /**
+     * Claims the request for being made.
+     * @return whether the request should be made; false if it has been withdrawn or completed meanwhile
+     */
+    private boolean start() {
+      return !isDone() && started.compareAndSet(false, true);
+    }
+  }
+
+  /**
+   * Parses the body of a successful response directly from the connection, so that the body
+   * never has to be held in memory as a whole before being parsed.
+   * @param <T> the type of the parsed result
+   */
+  @FunctionalInterface
+  public interface ResponseParser<T> {
+    T parse(Reader responseBody) throws IOException;
+  }
 
   public static void init() {
-    timestampLastAPIRequest = new Date();
+    baseUrl = PropertyManager.getBaseUrl();
+    //a capacity of 1 prevents bursts, so that no second ever sees more than the permitted requests
+    RateLimiter requestRateLimiter = new RateLimiter(MAX_REQUESTS_PER_SECOND, 1);
+    rateController = new AdaptiveRateController(requestRateLimiter, MIN_REQUESTS_PER_SECOND, MAX_REQUESTS_PER_SECOND);
+    rateLimiter = new FairRateLimiter(requestRateLimiter);
+    httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .build();
   }
 
   /**
    * Requests the details for a specific order from the Warframe Market API.
+   * @param account the Account whose order is requested
    * @param orderId a String containing the ID of the order to request details for
    * @return a JSON String containing the details of the order
+   * @throws UncheckedIOException if the request failed, even after retrying transient failures
    */
-  public static String getOrder(String orderId) {
+  public static String getOrder(Account account, String orderId) {
     String responseBody = null;
     try {
-      URL url = new URL(BASE_URL + "/profile/orders/" + orderId);
-      HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
-      con.setRequestMethod("GET");
+      HttpRequest.Builder requestBuilder = newRequestBuilder(baseUrl + "/profile/orders/" + orderId).GET();
 
       //add request headers
-      setAuthHeaders(con);
+      setAuthHeaders(requestBuilder, account);
 
       //get response
-      int status = sendRequest(con);
-      if(status > 299) {
-        responseBody = getResponseBody(con.getErrorStream());
+      HttpResponse<InputStream> response = sendRequest(requestBuilder.build(), ORDER_ENDPOINT, account,
+          RequestPriority.READ);
+      responseBody = getResponseBody(response);
+      if(response.statusCode() > 299) {
         throw new IOException(responseBody);
       }
-      else {
-        responseBody = getResponseBody(con.getInputStream());
-      }
-
-      //close connection
-      con.disconnect();
     }
     catch (IOException e) {
-      System.out.println(e.getMessage());
-      System.exit(-1);
+      throw new UncheckedIOException(e);
     }
 
     return responseBody;
@@ -64,242 +179,572 @@ public class APIRequestManager {
 
   /**
    * Request an update for a specific order with the provided data from the Warframe Market API.
+   * @param account the Account whose order is updated; receives the new JWT of the response
    * @param orderID a String containing the ID for the order to request an update for
    * @param jsonOrderValues a JSON String containing the key-value pairs to update the order with
+   * @param priority the RequestPriority of the update
+   * @throws IOException if the order could not be updated, even after retrying transient failures
    */
-  public static void updateOrder(String orderID, String jsonOrderValues) {
-    try {
-      URL url = new URL(BASE_URL + "/profile/orders/" + orderID);
-      HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
-      con.setRequestMethod("PUT");
+  public static void updateOrder(Account account, String orderID, String jsonOrderValues, RequestPriority priority)
+      throws IOException {
+    HttpRequest.Builder requestBuilder = newRequestBuilder(baseUrl + "/profile/orders/" + orderID)
+        .PUT(HttpRequest.BodyPublishers.ofString(jsonOrderValues, StandardCharsets.UTF_8));
 
-      //add request headers
-      setAuthHeaders(con);
+    //add request headers
+    setAuthHeaders(requestBuilder, account);
 
-      //set request content
-      setRequestBody(con, jsonOrderValues);
+    AtomicLong requestSequence = new AtomicLong();
+    HttpResponse<InputStream> response = sendRequest(requestBuilder.build(), ORDER_UPDATE_ENDPOINT, account, priority,
+        requestSequence);
+    String responseBody = getResponseBody(response);
 
-      int status = sendRequest(con);
+    if(response.statusCode() > 299) {
+      throw new IOException(responseBody);
+    }
+    else {
+      //updates run concurrently, so their responses may arrive out of order; only a newer token is kept
+      String newJWT = extractJWTFromResponseHeaders(response);
+      account.setJWT(newJWT, requestSequence.get());
+    }
+  }
 
-      if(status > 299) {
-        throw new IOException(getResponseBody(con.getErrorStream()));
+  /**
+   * Requests an update for a specific order like updateOrder(), but without blocking the caller,
+   * so that multiple updates can be in flight at the same time.
+   * @param account the Account whose order is updated; receives the new JWT of the response
+   * @param orderID a String containing the ID for the order to request an update for
+   * @param jsonOrderValues a JSON String containing the key-value pairs to update the order with
+   * @param priority the RequestPriority of the update
+   * @return a CompletableFuture that completes once the order has been updated;
+   * completes exceptionally with an UncheckedIOException if the order could not be updated
+   */
+  public static CompletableFuture<Void> updateOrderAsync(Account account, String orderID, String jsonOrderValues,
+      RequestPriority priority) {
+    return submitRequest(account, priority, () -> {
+      try {
+        updateOrder(account, orderID, jsonOrderValues, priority);
+        return null;
       }
-      else {
-        String newJWT = extractJWTFromResponseHeaders(con.getHeaderFields());
-        PropertyManager.setJWT(newJWT);
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
-    }
-    catch (IOException e) {
-      System.out.println(e.getMessage());
-      System.exit(-1);
-    }
+    });
   }
 
   /**
    * Requests info for all items known to Warframe Market.
-   * @return a JSON String containing information about all items
+   * @param account the Account on whose behalf the request is made
+   * @param parser the ResponseParser that the JSON response containing information about all items is passed to
+   * @param <T> the type of the parsed result
+   * @return the result of the parser
+   * @throws UncheckedIOException if the request failed, even after retrying transient failures
    */
-  public static String getAllItemsInfo() {
-    String responseBody = null;
+  public static <T> T getAllItemsInfo(Account account, ResponseParser<T> parser) {
+    return getAllItemsInfo(account, parser, RequestPriority.READ);
+  }
+
+  /**
+   * Requests info for all items known to Warframe Market like getAllItemsInfo(Account, ResponseParser),
+   * with a specific priority.
+   * @param priority the RequestPriority of the request
+   */
+  public static <T> T getAllItemsInfo(Account account, ResponseParser<T> parser, RequestPriority priority) {
+    T result = null;
     try {
-      URL url = new URL(BASE_URL + "/items");
-      responseBody = handleStandardGETRequest(url);
+      result = handleStandardGETRequest(baseUrl + "/items", ITEMS_ENDPOINT, account, parser, priority);
     }
     catch (IOException e) {
-      System.out.println(e.getMessage());
-      System.exit(-1);
+      throw new UncheckedIOException(e);
     }
 
-    return responseBody;
+    return result;
   }
 
   /**
    * Requests all info about a specified item from Warframe Market.
+   * @param account the Account on whose behalf the request is made
    * @param urlName item name used for the URL which contains the item's info
-   * @return a JSON String containing all information about the item
+   * @param parser the ResponseParser that the JSON response containing all information about the item is passed to
+   * @param <T> the type of the parsed result
+   * @return the result of the parser
+   * @throws UncheckedIOException if the request failed, even after retrying transient failures
    */
-  public static String getItemInfo(String urlName) {
-    String responseBody = null;
+  public static <T> T getItemInfo(Account account, String urlName, ResponseParser<T> parser) {
+    return getItemInfo(account, urlName, parser, RequestPriority.READ);
+  }
+
+  private static <T> T getItemInfo(Account account, String urlName, ResponseParser<T> parser,
+      RequestPriority priority) {
+    T result = null;
     try{
-      URL url = new URL(BASE_URL + "/items/" + urlName);
-      responseBody = handleStandardGETRequest(url);
+      result = handleStandardGETRequest(baseUrl + "/items/" + urlName, ITEM_ENDPOINT, account, parser, priority);
     }
     catch (IOException e) {
-      System.out.println(e.getMessage());
-      System.exit(-1);
+      throw new UncheckedIOException(e);
     }
 
-    return responseBody;
+    return result;
+  }
+
+  /**
+   * Requests all info about a specified item like getItemInfo(), but without blocking the caller,
+   * so that multiple items can be requested at the same time.
+   * @param account the Account on whose behalf the request is made
+   * @param urlName item name used for the URL which contains the item's info
+   * @param parser the ResponseParser that the JSON response containing all information about the item is passed to
+   * @param <T> the type of the parsed result
+   * @return a CompletableFuture that completes with the result of the parser;
+   * completes exceptionally with an UncheckedIOException if the request failed
+   */
+  public static <T> CompletableFuture<T> getItemInfoAsync(Account account, String urlName, ResponseParser<T> parser) {
+    return getItemInfoAsync(account, urlName, parser, RequestPriority.READ);
+  }
+
+  /**
+   * Requests all info about a specified item like getItemInfoAsync(Account, String, ResponseParser),
+   * with a specific priority.
+   * @param priority the RequestPriority of the request
+   */
+  public static <T> QueuedRequest<T> getItemInfoAsync(Account account, String urlName, ResponseParser<T> parser,
+      RequestPriority priority) {
+    return submitRequest(account, priority, () -> getItemInfo(account, urlName, parser, priority));
   }
 
   /**
-   * Retrieves a list of all orders from the Warframe Market profile of the user;
+   * Retrieves a list of all orders from the Warframe Market profile of an account;
    * specifically all orders visible to the authenticated Warframe Market profile owner.
-   * @return a JSON String containing all orders of the user
+   * @param account the Account whose orders are requested
+   * @param parser the ResponseParser that the JSON response containing all orders of the user is passed to
+   * @param <T> the type of the parsed result
+   * @return the result of the parser
+   * @throws UncheckedIOException if the request failed, even after retrying transient failures
    */
-  public static String getAllOrdersFromOwnProfile() {
-    String responseBody = null;
+  public static <T> T getAllOrdersFromOwnProfile(Account account, ResponseParser<T> parser) {
+    return getAllOrdersFromOwnProfile(account, parser, RequestPriority.READ);
+  }
+
+  /**
+   * Retrieves a list of all orders from the Warframe Market profile of an account
+   * like getAllOrdersFromOwnProfile(Account, ResponseParser), with a specific priority.
+   * @param priority the RequestPriority of the request
+   */
+  public static <T> T getAllOrdersFromOwnProfile(Account account, ResponseParser<T> parser,
+      RequestPriority priority) {
+    T result = null;
     try {
-      URL url = new URL(BASE_URL + "/profile/" + PropertyManager.getUserName() + "/orders");
-      HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
-      con.setRequestMethod("GET");
+      HttpRequest.Builder requestBuilder = newRequestBuilder(
+          baseUrl + "/profile/" + account.getUserName() + "/orders").GET();
 
       //add request headers
-      setAuthHeaders(con);
+      setAuthHeaders(requestBuilder, account);
 
       //get response
-      int status = sendRequest(con);
-      if(status > 299) {
-        responseBody = getResponseBody(con.getErrorStream());
-        throw new IOException(responseBody);
-      }
-      else {
-        responseBody = getResponseBody(con.getInputStream());
-      }
-
-      //close connection
-      con.disconnect();
+      HttpResponse<InputStream> response = sendRequest(requestBuilder.build(), PROFILE_ORDERS_ENDPOINT, account,
+          priority);
+      result = parseResponseBody(response, PROFILE_ORDERS_ENDPOINT, parser);
     }
     catch (IOException e) {
-      System.out.println(e.getMessage());
-      System.exit(-1);
+      throw new UncheckedIOException(e);
     }
 
-    return responseBody;
+    return result;
   }
 
   /**
-   * Takes care of building and sending a regular HTTPS GET request and returns its response body.
-   * as a JSON String
+   * Takes care of building and sending a regular HTTPS GET request and passes its response body
+   * to the passed parser.
+   * Responses with validators are kept in the HttpResponseCache; if a response for the URL is cached,
+   * the request asks the API to only send the body if it changed and the cached body is parsed otherwise.
    * @param url the URL to send the HTTPS GET request to
-   * @return a JSON String containing the response body
+   * @param endpoint a String identifying the endpoint of the URL for metrics
+   * @param account the Account on whose behalf the request is made
+   * @param parser the ResponseParser that the JSON response body is passed to
+   * @param priority the RequestPriority of the request
+   * @param <T> the type of the parsed result
+   * @return the result of the parser
    * @throws IOException
    */
-  private static String handleStandardGETRequest(URL url) throws IOException {
-    HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
-    con.setRequestMethod("GET");
+  private static <T> T handleStandardGETRequest(String url, String endpoint, Account account,
+      ResponseParser<T> parser, RequestPriority priority) throws IOException {
+    return handleStandardGETRequest(url, endpoint, account, parser, priority, HttpResponseCache.getValidators(url));
+  }
+
+  /**
+   * @param validators the Validators of the cached response for the URL; null to request the body unconditionally
+   */
+  private static <T> T handleStandardGETRequest(String url, String endpoint, Account account,
+      ResponseParser<T> parser, RequestPriority priority, HttpResponseCache.Validators validators) throws IOException {
+    HttpRequest.Builder requestBuilder = newRequestBuilder(url).GET();
 
     //add request headers
-    setCommonHeaders(con);
+    setCommonHeaders(requestBuilder);
+    if(validators != null && validators.getETag() != null) {
+      requestBuilder.setHeader("If-None-Match", validators.getETag());
+    }
+    if(validators != null && validators.getLastModified() != null) {
+      requestBuilder.setHeader("If-Modified-Since", validators.getLastModified());
+    }
 
     //get response
-    int status = sendRequest(con);
-    String responseBody = null;
-    if(status > 299) {
-      responseBody = getResponseBody(con.getErrorStream());
-      throw new IOException(responseBody);
+    HttpResponse<InputStream> response = sendRequest(requestBuilder.build(), endpoint, account, priority);
+    if(response.statusCode() == 304) {
+      response.body().close();
+      InputStream cachedBody;
+      try {
+        cachedBody = HttpResponseCache.openBody(url);
+      }
+      catch (IOException e) {
+        //the cached response was removed or damaged after its validators were read
+        return handleStandardGETRequest(url, endpoint, account, parser, priority, null);
+      }
+      return parseBody(cachedBody, endpoint, parser);
     }
-    else {
-      responseBody = getResponseBody(con.getInputStream());
+
+    String eTag = response.headers().firstValue("ETag").orElse(null);
+    String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+    if(response.statusCode() > 299 || (eTag == null && lastModified == null)) {
+      return parseResponseBody(response, endpoint, parser);
     }
 
-    //close connection
-    con.disconnect();
+    long parseStartNanos = System.nanoTime();
+    try(HttpResponseCache.PendingEntry body =
+            HttpResponseCache.store(url, eTag, lastModified, getDecodedBody(response));
+        Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+      T result = parser.parse(reader);
+      body.commit();
+      return result;
+    }
+    finally {
+      //parsing happens while the body is received, so this includes the time for receiving it
+      ApiMetrics.recordParse(endpoint, System.nanoTime() - parseStartNanos);
+    }
+  }
 
-    return responseBody;
+  /**
+   * Passes the body of a successful HTTPS response to a parser while it is being received.
+   * @param response the HttpResponse to read the body from
+   * @param endpoint a String identifying the endpoint of the response for metrics
+   * @param parser the ResponseParser that the JSON response body is passed to
+   * @param <T> the type of the parsed result
+   * @return the result of the parser
+   * @throws IOException if the response indicates an error, containing the error response body as message
+   */
+  private static <T> T parseResponseBody(HttpResponse<InputStream> response, String endpoint,
+      ResponseParser<T> parser) throws IOException {
+    if(response.statusCode() > 299) {
+      throw new IOException(getResponseBody(response));
+    }
+    return parseBody(getDecodedBody(response), endpoint, parser);
+  }
+
+  /**
+   * Passes a JSON body to a parser while it is being read and closes it afterwards.
+   * @param body the InputStream providing the decoded body
+   * @param endpoint a String identifying the endpoint that the body belongs to for metrics
+   * @param parser the ResponseParser that the body is passed to
+   * @param <T> the type of the parsed result
+   * @return the result of the parser
+   * @throws IOException if reading fails or the parser fails
+   */
+  private static <T> T parseBody(InputStream body, String endpoint, ResponseParser<T> parser) throws IOException {
+    long parseStartNanos = System.nanoTime();
+    try(Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+      return parser.parse(reader);
+    }
+    finally {
+      //parsing happens while the body is received, so this includes the time for receiving it
+      ApiMetrics.recordParse(endpoint, System.nanoTime() - parseStartNanos);
+    }
+  }
+
+  /**
+   * Reads the body of a HTTPS response and returns it as a JSON String.
+   * Only meant for small bodies; larger ones should be passed to a ResponseParser instead.
+   * @param response the HttpResponse to read the body from
+   * @return a JSON String containing the response body
+   * @throws IOException
+   */
+  private static String getResponseBody(HttpResponse<InputStream> response) throws IOException {
+    try(InputStream instream = getDecodedBody(response)) {
+      return getResponseBody(instream);
+    }
+  }
+
+  /**
+   * Returns the body of a HTTPS response as an InputStream,
+   * taking care of decompressing it if the server sent it gzip-encoded.
+   * @param response the HttpResponse with the body
+   * @return an InputStream providing the decoded body
+   * @throws IOException
+   */
+  private static InputStream getDecodedBody(HttpResponse<InputStream> response) throws IOException {
+    InputStream instream = response.body();
+    String contentEncoding = response.headers().firstValue("Content-Encoding").orElse("");
+    if(contentEncoding.equalsIgnoreCase("gzip")) {
+      instream = new GZIPInputStream(instream);
+    }
+    return instream;
   }
 
   /**
    * Reads the body of a HTTPS response from an InputStream and returns it as a JSON String.
+   * The raw bytes are collected in a reusable buffer and decoded only once; buffers grown beyond
+   * MAX_RETAINED_BODY_BUFFER_SIZE are only used for the body they were grown for.
    * @param instream the InputStream object to read the response from
    * @return a JSON String containing the response body
    * @throws IOException
    */
   private static String getResponseBody(InputStream instream) throws IOException {
-    StringBuilder responseBuilder = new StringBuilder();
-    try(BufferedReader br = new BufferedReader(
-        new InputStreamReader(instream, StandardCharsets.UTF_8))) {
-      String responseLine;
-      while((responseLine = br.readLine()) != null) {
-        responseBuilder.append(responseLine.trim());
+    byte[] buffer = bodyBuffer.get();
+    int length = 0;
+    int read;
+    while((read = instream.read(buffer, length, buffer.length - length)) >= 0) {
+      length += read;
+      if(length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        if(buffer.length <= MAX_RETAINED_BODY_BUFFER_SIZE) {
+          bodyBuffer.set(buffer);
+        }
       }
     }
-    return responseBuilder.toString();
+    return new String(buffer, 0, length, StandardCharsets.UTF_8);
   }
 
   /**
    * Tries to locate and extract the JSON Web Token from the headers of a HTTPS response.
-   * @param responseHeaders map with all headers
+   * @param response the HttpResponse with all headers
    * @return returns a String containing the JSON Web Token extracted from the headers
    */
-  private static String extractJWTFromResponseHeaders(Map<String, List<String>> responseHeaders) {
-    for(Map.Entry<String, List<String>> entry : responseHeaders.entrySet()) {
-      if(entry.getKey() == null || !entry.getKey().contains("Authorization")) {
-        continue;
-      }
-      //retrieves the JWT String from the Authorization header and cuts the 4 leading "JTW " chars
-      return entry.getValue().get(0).substring(4);
-    }
-    return null;
+  private static String extractJWTFromResponseHeaders(HttpResponse<?> response) {
+    //header names are case-insensitive and HTTP/2 transmits them in lower case
+    //retrieves the JWT String from the Authorization header and cuts the 4 leading "JTW " chars
+    return response.headers().firstValue("Authorization")
+        .map(authorization -> authorization.substring(4))
+        .orElse(null);
+  }
+
+  /**
+   * Attempts to send the passed request and returns the response.
+   * Blocks until the rate limiter permits another request to the API on behalf of the account.
+   * Every response adapts the request rate; throttled responses lower it, all others raise it.
+   * Transient failures are retried with exponential backoff, or after the time the API asked for with Retry-After;
+   * if they persist, the last response is returned.
+   * @param request the HttpRequest that should be sent
+   * @param endpoint a String identifying the endpoint of the request for metrics
+   * @param account the Account on whose behalf the request is made
+   * @param priority the RequestPriority of the request
+   * @return the HttpResponse with the body available as an InputStream
+   * @throws IOException if the request could not be sent, even after retrying
+   */
+  private static HttpResponse<InputStream> sendRequest(HttpRequest request, String endpoint, Account account,
+      RequestPriority priority) throws IOException {
+    return sendRequest(request, endpoint, account, priority, null);
   }
 
   /**
-   * Attempts to send the request from the passed con argument and returns the response code.
-   * @param con the HttpsURLConnection object from which the request should be sent
-   * @return an int containing the HTTPS response code
+   * Sends a request like sendRequest(), but also tells when the returned response was sent
+   * relative to the other requests of the account.
+   * @param requestSequence receives the request sequence number of the account for the attempt that
+   * the response belongs to; null if it is not needed
    */
-  private static int sendRequest(HttpsURLConnection con) {
-    //if necessary wait long enough so that a third of a second has passed since the last
-    //request made to the API
-    long timeSinceLastRequest;
-    if( (timeSinceLastRequest = new Date().getTime() - timestampLastAPIRequest.getTime())
-        < MIN_DELAY_BETWEEN_REQUESTS) {
+  private static HttpResponse<InputStream> sendRequest(HttpRequest request, String endpoint, Account account,
+      RequestPriority priority, AtomicLong requestSequence) throws IOException {
+    //counts the bytes of the body as they arrive, before any decompression
+    HttpResponse.BodyHandler<InputStream> bodyHandler = responseInfo -> HttpResponse.BodySubscribers.mapping(
+        HttpResponse.BodySubscribers.ofInputStream(), body -> ApiMetrics.countReceivedBytes(endpoint, body));
+    long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+    for(int attempt = 1; ; attempt++) {
       try {
-        Thread.sleep(MIN_DELAY_BETWEEN_REQUESTS - timeSinceLastRequest);
+        ApiMetrics.recordRateLimitWait(rateLimiter.acquire(account.getName(), priority));
+        if(requestSequence != null) {
+          requestSequence.set(account.nextRequestSequence());
+        }
+        long sendNanos = System.nanoTime();
+        HttpResponse<InputStream> response = httpClient.send(request, bodyHandler);
+        ApiMetrics.recordRequest(endpoint, System.nanoTime() - sendNanos, response.statusCode());
+        long retryAfterMillis = 0;
+        if(isThrottled(response.statusCode())) {
+          retryAfterMillis = getRetryAfterMillis(response);
+          //also withholds the requests of all other threads until the time the API asked for
+          rateController.onThrottled(TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        }
+        else if(response.statusCode() < 500) {
+          rateController.onSuccess();
+        }
+        if(!isTransientFailure(response.statusCode()) || attempt == MAX_REQUEST_ATTEMPTS
+            || retryAfterMillis > MAX_RETRY_AFTER_MILLIS) {
+          return response;
+        }
+        //discard the body of the failed attempt, it is of no use
+        response.body().close();
+        if(retryAfterMillis > 0) {
+          //the rate limiter makes the retry wait for the time the API asked for
+          continue;
+        }
       }
       catch (InterruptedException e) {
-        System.out.println(e.getMessage());
-        System.exit(-1);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(e.getMessage());
       }
+      catch (IOException e) {
+        //covers timeouts and connection failures, which are usually transient
+        ApiMetrics.recordFailedRequest(endpoint);
+        if(attempt == MAX_REQUEST_ATTEMPTS) {
+          throw e;
+        }
+      }
+
+      try {
+        //random jitter keeps concurrent retries from hitting the API at the same moment again
+        Thread.sleep(retryDelayMillis + ThreadLocalRandom.current().nextLong(retryDelayMillis / 2 + 1));
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(e.getMessage());
+      }
+      retryDelayMillis *= 2;
+    }
+  }
+
+  /**
+   * Determines the time that a response asks to wait before the next request with its Retry-After header,
+   * which contains either a number of seconds or a date.
+   * @param response the HttpResponse with all headers
+   * @return a long containing the time to wait in milliseconds; 0 if the response doesn't ask for any
+   */
+  private static long getRetryAfterMillis(HttpResponse<?> response) {
+    String retryAfter = response.headers().firstValue("Retry-After").orElse("").trim();
+    if(retryAfter.isEmpty()) {
+      return 0;
     }
-    int responseCode = 0;
     try {
-      responseCode = con.getResponseCode();
+      return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter)));
     }
-    catch (IOException e) {
-      System.out.println(e.getMessage());
-      System.exit(-1);
+    catch (NumberFormatException e) {
+      //not a number of seconds, so it has to be a date
+    }
+    try {
+      ZonedDateTime retryDate = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+      return Math.max(0, Duration.between(ZonedDateTime.now(retryDate.getZone()), retryDate).toMillis());
+    }
+    catch (DateTimeParseException e) {
+      return 0;
     }
-    //getResponseCode() implicitly sends the HTTPS request to the API,
-    //therefore refresh the timestamp for the last request
-    timestampLastAPIRequest = new Date();
+  }
 
-    return responseCode;
+  /**
+   * Determines whether a response code indicates that the API is being sent more requests than it accepts.
+   * @param statusCode the HTTPS response code
+   * @return true for 429 (too many requests) and 503 (service unavailable); false otherwise
+   */
+  private static boolean isThrottled(int statusCode) {
+    return statusCode == 429 || statusCode == 503;
   }
 
   /**
-   * Sets the body of a HTTPS request from a JSON String.
-   * @param con the HttpsURLConnection object to set the HTTPS request body of
-   * @param jsonContent a JSON String with the content that will be written into the request body
-   * @throws IOException
+   * Determines whether a response code indicates a failure that is likely to pass when the request is retried.
+   * @param statusCode the HTTPS response code
+   * @return true for 429 (too many requests) and 5xx (server errors); false otherwise
    */
-  private static void setRequestBody(HttpsURLConnection con, String jsonContent)
-      throws IOException {
-    con.setDoOutput(true);
-    try(OutputStream os = con.getOutputStream()) {
-      byte[] input = jsonContent.getBytes(StandardCharsets.UTF_8);
-      os.write(input, 0, input.length);
-    }
+  private static boolean isTransientFailure(int statusCode) {
+    return statusCode == 429 || statusCode >= 500;
+  }
+
+  /**
+   * Opens a connection to the Warframe Market API in the background, so that DNS lookup
+   * and TLS handshake are already done when the first actual request is sent.
+   * Only pays off if the first request isn't sent right away, since the warm-up takes a permit of the rate limiter.
+   */
+  public static void warmUpConnection() {
+    Account account = PropertyManager.getDefaultAccount();
+    submitRequest(account, RequestPriority.READ, () -> {
+      //a GET is used because connections of HEAD responses are not always returned to the pool
+      HttpRequest request = newRequestBuilder(baseUrl).GET().build();
+      try {
+        rateLimiter.acquire(account.getName(), RequestPriority.READ);
+        httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+      }
+      catch (IOException | InterruptedException e) {
+        //the first actual request will simply open the connection itself
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Makes a request on one of the threads of an account, as soon as it is the request's turn.
+   * @param account the Account on whose behalf the request is made
+   * @param priority the RequestPriority of the request
+   * @param request the Supplier that makes the request and returns its result
+   * @param <T> the type of the result
+   * @return a CompletableFuture that completes with the result of the request;
+   * completes exceptionally with anything the request throws. Cancelling it before it is the request's turn
+   * keeps the request from being made.
+   */
+  private static <T> QueuedRequest<T> submitRequest(Account account, RequestPriority priority,
+      Supplier<T> request) {
+    QueuedRequest<T> result = new QueuedRequest<>();
+    getRequestExecutor(account).execute(new PrioritizedRequest(priority, () -> {
+      //the result is no longer needed, so the request would only cost a permit
+      if(!result.start()) {
+        return;
+      }
+      try {
+        result.complete(request.get());
+      }
+      catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    }));
+    return result;
+  }
+
+  /**
+   * Returns the threads that asynchronous requests of an account are made on, starting them on first use.
+   * Requests that find all threads busy wait in a queue ordered by their priority.
+   * @param account the Account on whose behalf the requests are made
+   * @return the ExecutorService of the account
+   */
+  private static ExecutorService getRequestExecutor(Account account) {
+    return requestExecutors.computeIfAbsent(account.getName(), name ->
+        new ThreadPoolExecutor(MAX_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS, 0, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), runnable -> {
+              Thread thread = new Thread(runnable, "api-request-" + name);
+              //pending requests must not keep the program from exiting
+              thread.setDaemon(true);
+              return thread;
+            }));
+  }
+
+  /**
+   * Creates a HttpRequest.Builder for the passed URL with the settings common to all API requests.
+   * @param url a String containing the URL for the request
+   * @return the HttpRequest.Builder
+   */
+  private static HttpRequest.Builder newRequestBuilder(String url) {
+    return HttpRequest.newBuilder(URI.create(url)).timeout(REQUEST_TIMEOUT);
   }
 
   /**
-   * Adds HTTPS headers that are common for all API requests to HTTPSURLConnection object.
-   * @param con the HTTPSURLConnection object to add the headers to
+   * Adds HTTPS headers that are common for all API requests to a HttpRequest.Builder.
+   * @param requestBuilder the HttpRequest.Builder to add the headers to
    */
-  private static void setCommonHeaders (HttpsURLConnection con) {
-    con.setRequestProperty("Content-Type", "application/json; utf-8");
-    con.setRequestProperty("accept", "application/json");
-    con.setRequestProperty("language", "en");
-    con.setRequestProperty("platform", "pc");
+  private static void setCommonHeaders (HttpRequest.Builder requestBuilder) {
+    requestBuilder.setHeader("Content-Type", "application/json; utf-8");
+    requestBuilder.setHeader("accept", "application/json");
+    requestBuilder.setHeader("Accept-Encoding", "gzip");
+    requestBuilder.setHeader("language", "en");
+    requestBuilder.setHeader("platform", "pc");
   }
 
   /**
-   * Adds HTTPS all headers that are required for authenticated API requests to HTTPSURLConnection object.
-   * @param con the HTTPSURLConnection object to add the headers to
+   * Adds HTTPS all headers that are required for authenticated API requests to a HttpRequest.Builder.
+   * @param requestBuilder the HttpRequest.Builder to add the headers to
+   * @param account the Account whose JWT authenticates the request
    */
-  private static void setAuthHeaders (HttpsURLConnection con) {
-    setCommonHeaders(con);
-    con.setRequestProperty("auth_type", "header");
-    con.setRequestProperty("Authorization", "JWT " + PropertyManager.getJWT());
+  private static void setAuthHeaders (HttpRequest.Builder requestBuilder, Account account) {
+    setCommonHeaders(requestBuilder);
+    requestBuilder.setHeader("auth_type", "header");
+    requestBuilder.setHeader("Authorization", "JWT " + account.getJWT());
   }
 }
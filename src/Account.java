@@ -0,0 +1,139 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Warframe Market profile whose orders are managed by the program, with its own credentials
+ * and Syndicate visibility settings. All settings are kept in the properties file; the default account
+ * uses the keys the program always used, additional accounts prefix them with "account.&lt;name&gt;.".
+ * Every account remembers the state of its orders as of its last update separately.
+ */
+public class Account {
+  //name of the account that exists from the start and can not be removed
+  public static final String DEFAULT_NAME = "default";
+  private static final String ACCOUNT_KEY_PREFIX = "account.";
+
+  private final String name;
+  private final String keyPrefix;
+  //visibility of all Syndicates, kept in line with their properties
+  private volatile int visibleSyndicateMask;
+  //orders and Syndicate settings as of the last update; lets updates skip orders that are unaffected
+  private final OrderSnapshot orderSnapshot = new OrderSnapshot();
+  //numbers the requests of the account in the order they are sent, so that responses can be told apart by age
+  private final AtomicLong requestSequence = new AtomicLong();
+  //request sequence number of the response that the current JWT stems from
+  private long jwtRequestSequence;
+
+  /**
+   * Creates an account backed by the properties and reads its Syndicate visibilities from them.
+   * @param name the name of the account; DEFAULT_NAME for the default account
+   */
+  Account(String name) {
+    this.name = name;
+    this.keyPrefix = name.equals(DEFAULT_NAME) ? "" : ACCOUNT_KEY_PREFIX + name + ".";
+    loadVisibleSyndicateMask();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isDefault() {
+    return keyPrefix.isEmpty();
+  }
+
+  public String getUserName() {
+    return PropertyManager.getProperty(keyPrefix + "userName");
+  }
+
+  public void setUserName(String newUserName) {
+    PropertyManager.setProperty(keyPrefix + "userName", newUserName);
+  }
+
+  public String getJWT() {
+    return PropertyManager.getProperty(keyPrefix + "jwt");
+  }
+
+  public synchronized void setJWT(String newJWT) {
+    PropertyManager.setProperty(keyPrefix + "jwt", newJWT);
+    //a token set by the user replaces any token of a response that is still underway
+    jwtRequestSequence = requestSequence.get();
+  }
+
+  /**
+   * Sets the JWT that a response carried, unless the current JWT stems from a request that was sent later.
+   * @param newJWT a String containing the JWT of the response
+   * @param sequence the request sequence number of the request that the response belongs to
+   * @return true if the JWT has been set; false if it is older than the current one
+   */
+  public synchronized boolean setJWT(String newJWT, long sequence) {
+    if(sequence <= jwtRequestSequence) {
+      return false;
+    }
+    PropertyManager.setProperty(keyPrefix + "jwt", newJWT);
+    jwtRequestSequence = sequence;
+    return true;
+  }
+
+  /**
+   * @return a long containing the sequence number for a request that is about to be sent, greater than
+   * the numbers of all requests of this account sent before
+   */
+  long nextRequestSequence() {
+    return requestSequence.incrementAndGet();
+  }
+
+  /**
+   * @param syndicate the Syndicate to look up
+   * @return the visibility set for the Syndicate; true = 'visible', false = 'invisible'
+   */
+  public boolean getVisible(Syndicate syndicate) {
+    return syndicate.isIn(visibleSyndicateMask);
+  }
+
+  public synchronized void setVisible(Syndicate syndicate, boolean visible) {
+    PropertyManager.setProperty(keyPrefix + syndicate.getPropertyKey(), String.valueOf(visible));
+    visibleSyndicateMask = visible
+        ? visibleSyndicateMask | syndicate.getMask()
+        : visibleSyndicateMask & ~syndicate.getMask();
+  }
+
+  /**
+   * @return an int mask of all Syndicates that are set as visible for this account
+   */
+  public int getVisibleSyndicateMask() {
+    return visibleSyndicateMask;
+  }
+
+  OrderSnapshot getOrderSnapshot() {
+    return orderSnapshot;
+  }
+
+  /**
+   * Removes all settings of this account from the properties.
+   */
+  void removeProperties() {
+    PropertyManager.removeProperty(keyPrefix + "userName");
+    PropertyManager.removeProperty(keyPrefix + "jwt");
+    for(Syndicate syndicate : Syndicate.values()) {
+      PropertyManager.removeProperty(keyPrefix + syndicate.getPropertyKey());
+    }
+  }
+
+  /**
+   * Reads the visibility of every Syndicate from the properties into the mask of visible Syndicates,
+   * so that they are parsed once instead of on every lookup.
+   */
+  private void loadVisibleSyndicateMask() {
+    int mask = 0;
+    for(Syndicate syndicate : Syndicate.values()) {
+      if(Boolean.parseBoolean(PropertyManager.getProperty(keyPrefix + syndicate.getPropertyKey()))) {
+        mask |= syndicate.getMask();
+      }
+    }
+    visibleSyndicateMask = mask;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,75 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the rate of a RateLimiter to the request budget that the Warframe Market API actually grants,
+ * by additive increase and multiplicative decrease: every successful response raises the rate a little,
+ * up to the maximum rate, and every response that says the API is being asked too much (429 or 503)
+ * cuts the rate by a fraction. If such a response carries a Retry-After time, no requests are sent until then.
+ * Requests already in flight when the rate is cut were sent at the previous rate, so their throttled responses
+ * only cut the rate once within a cooldown.
+ */
+public class AdaptiveRateController {
+  //rate gained with every successful response; about one request per second more after 50 responses
+  private static final double ADDITIVE_INCREASE = 0.02;
+  private static final double MULTIPLICATIVE_DECREASE = 0.75;
+  //the API counts requests per second, so throttled responses within a second stem from the same excess
+  private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final RateLimiter rateLimiter;
+  private final double minPermitsPerSecond;
+  private final double maxPermitsPerSecond;
+  private double permitsPerSecond;
+  private long lastDecreaseNanos;
+
+  /**
+   * Starts at the maximum rate.
+   * @param rateLimiter the RateLimiter whose rate is adapted
+   * @param minPermitsPerSecond the rate that is never undercut, so that requests still make progress
+   * @param maxPermitsPerSecond the rate that is never exceeded, however well the API keeps up
+   */
+  public AdaptiveRateController(RateLimiter rateLimiter, double minPermitsPerSecond, double maxPermitsPerSecond) {
+    this.rateLimiter = rateLimiter;
+    this.minPermitsPerSecond = minPermitsPerSecond;
+    this.maxPermitsPerSecond = maxPermitsPerSecond;
+    this.permitsPerSecond = maxPermitsPerSecond;
+    this.lastDecreaseNanos = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+    rateLimiter.setPermitsPerSecond(permitsPerSecond);
+    ApiMetrics.recordRequestRate(permitsPerSecond);
+  }
+
+  /**
+   * Raises the rate after a response that the API did not throttle.
+   */
+  public synchronized void onSuccess() {
+    if(permitsPerSecond < maxPermitsPerSecond) {
+      setPermitsPerSecond(Math.min(maxPermitsPerSecond, permitsPerSecond + ADDITIVE_INCREASE));
+    }
+  }
+
+  /**
+   * Cuts the rate after a response that the API throttled and withholds further requests if it asked to.
+   * @param retryAfterNanos the time in nanoseconds that the response asked to wait before the next request;
+   * 0 if it didn't ask for any
+   */
+  public synchronized void onThrottled(long retryAfterNanos) {
+    if(retryAfterNanos > 0) {
+      rateLimiter.pause(retryAfterNanos);
+    }
+    long now = System.nanoTime();
+    if(now - lastDecreaseNanos < DECREASE_COOLDOWN_NANOS) {
+      return;
+    }
+    lastDecreaseNanos = now;
+    setPermitsPerSecond(Math.max(minPermitsPerSecond, permitsPerSecond * MULTIPLICATIVE_DECREASE));
+  }
+
+  public synchronized double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  private void setPermitsPerSecond(double newPermitsPerSecond) {
+    permitsPerSecond = newPermitsPerSecond;
+    rateLimiter.setPermitsPerSecond(newPermitsPerSecond);
+    ApiMetrics.recordRequestRate(newPermitsPerSecond);
+  }
+}
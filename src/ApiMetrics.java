@@ -0,0 +1,276 @@
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * Collects metrics about the requests made to the Warframe Market API and the processing of their responses:
+ * request counts, latency histograms, bytes received and parse time per endpoint, as well as the time spent
+ * waiting for the rate limiter, the request rate granted by the AdaptiveRateController and the hit ratio of
+ * the item cache.
+ * Recording only increments counters, so the metrics can always be collected.
+ */
+public class ApiMetrics {
+  private static final Map<String, EndpointMetrics> endpointMetrics = new ConcurrentHashMap<>();
+  private static final LongAdder rateLimitWaitNanos = new LongAdder();
+  private static final LongAdder itemCacheHits = new LongAdder();
+  private static final LongAdder itemCacheMisses = new LongAdder();
+  private static final LongAdder coalescedItemLookups = new LongAdder();
+  private static final LongAdder cachedSetMembers = new LongAdder();
+  private static final LongAdder evaluationNanos = new LongAdder();
+  //only changed by the AdaptiveRateController, one change at a time
+  private static volatile double requestRate;
+  private static volatile double lowestRequestRate = Double.POSITIVE_INFINITY;
+  private static volatile long periodStartNanos = System.nanoTime();
+
+  /**
+   * Metrics for all requests to a single endpoint.
+   */
+  private static class EndpointMetrics {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    //requests answered with 304, whose body was read from the HttpResponseCache instead
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+  }
+
+  /**
+   * Counts all bytes read from the wrapped InputStream towards the received bytes of an endpoint.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private final LongAdder bytesReceived;
+
+    private CountingInputStream(InputStream in, LongAdder bytesReceived) {
+      super(in);
+      this.bytesReceived = bytesReceived;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if(b >= 0) {
+        bytesReceived.increment();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if(read > 0) {
+        bytesReceived.add(read);
+      }
+      return read;
+    }
+  }
+
+  /**
+   * Records a request that received a response.
+   * @param endpoint a String identifying the endpoint, such as "GET /items/{url_name}"
+   * @param latencyNanos the time in nanoseconds from sending the request until the response headers arrived
+   * @param statusCode the HTTPS response code
+   */
+  public static void recordRequest(String endpoint, long latencyNanos, int statusCode) {
+    EndpointMetrics metrics = getEndpointMetrics(endpoint);
+    metrics.requests.increment();
+    metrics.latency.record(latencyNanos);
+    if(statusCode == 304) {
+      metrics.notModified.increment();
+    }
+    else if(statusCode > 299) {
+      metrics.failures.increment();
+    }
+  }
+
+  /**
+   * Records a request that did not receive a response at all, e.g. because of a timeout.
+   * @param endpoint a String identifying the endpoint
+   */
+  public static void recordFailedRequest(String endpoint) {
+    EndpointMetrics metrics = getEndpointMetrics(endpoint);
+    metrics.requests.increment();
+    metrics.failures.increment();
+  }
+
+  /**
+   * Wraps a response body, so that all bytes read from it are counted for an endpoint.
+   * @param endpoint a String identifying the endpoint
+   * @param body the InputStream of the response body as received
+   * @return an InputStream that counts the bytes read
+   */
+  public static InputStream countReceivedBytes(String endpoint, InputStream body) {
+    return new CountingInputStream(body, getEndpointMetrics(endpoint).bytesReceived);
+  }
+
+  /**
+   * Records the time spent reading and parsing a response body, whether received or read from the local copy.
+   * @param endpoint a String identifying the endpoint
+   * @param nanos the time in nanoseconds
+   */
+  public static void recordParse(String endpoint, long nanos) {
+    getEndpointMetrics(endpoint).parseNanos.add(nanos);
+  }
+
+  public static void recordRateLimitWait(long nanos) {
+    rateLimitWaitNanos.add(nanos);
+  }
+
+  public static void recordItemCacheHit() {
+    itemCacheHits.increment();
+  }
+
+  public static void recordItemCacheMiss() {
+    itemCacheMisses.increment();
+  }
+
+  /**
+   * Records an item lookup that shared the request of another lookup for the same item instead of making its own.
+   */
+  public static void recordCoalescedItemLookup() {
+    coalescedItemLookups.increment();
+  }
+
+  /**
+   * Records an item that was cached from the details of another item of its set, without a request of its own.
+   */
+  public static void recordCachedSetMember() {
+    cachedSetMembers.increment();
+  }
+
+  /**
+   * Records a change of the rate that requests are sent at.
+   * @param requestsPerSecond the new rate in requests per second
+   */
+  public static void recordRequestRate(double requestsPerSecond) {
+    requestRate = requestsPerSecond;
+    if(requestsPerSecond < lowestRequestRate) {
+      lowestRequestRate = requestsPerSecond;
+    }
+  }
+
+  /**
+   * Records the time spent deciding which orders to update, excluding any requests.
+   * @param nanos the time in nanoseconds
+   */
+  public static void recordEvaluation(long nanos) {
+    evaluationNanos.add(nanos);
+  }
+
+  /**
+   * Discards all metrics recorded so far and starts a new period.
+   */
+  public static void reset() {
+    endpointMetrics.clear();
+    rateLimitWaitNanos.reset();
+    itemCacheHits.reset();
+    itemCacheMisses.reset();
+    coalescedItemLookups.reset();
+    cachedSetMembers.reset();
+    evaluationNanos.reset();
+    lowestRequestRate = requestRate;
+    periodStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Builds a human-readable summary of the metrics of the current period.
+   * @return a String containing the summary, one line per endpoint
+   */
+  public static String getSummary() {
+    StringBuilder summary = new StringBuilder();
+    summary.append(String.format("Metrics for the last %.1f s:", nanosToSeconds(System.nanoTime() - periodStartNanos)));
+    for(Map.Entry<String, EndpointMetrics> entry : new TreeMap<>(endpointMetrics).entrySet()) {
+      EndpointMetrics metrics = entry.getValue();
+      summary.append(String.format("%n  %-28s %5d requests, %3d failed, %3d not modified, latency p50 %5d ms, "
+              + "p90 %5d ms, p99 %5d ms, parse %.2f s, %s received",
+          entry.getKey(), metrics.requests.sum(), metrics.failures.sum(), metrics.notModified.sum(),
+          nanosToMillis(metrics.latency.getPercentile(50)), nanosToMillis(metrics.latency.getPercentile(90)),
+          nanosToMillis(metrics.latency.getPercentile(99)), nanosToSeconds(metrics.parseNanos.sum()),
+          formatBytes(metrics.bytesReceived.sum())));
+    }
+    long hits = itemCacheHits.sum();
+    long lookups = hits + itemCacheMisses.sum();
+    summary.append(String.format("%n  Waited for rate limit: %.1f s, request rate %.2f/s, lowest %.2f/s",
+        nanosToSeconds(rateLimitWaitNanos.sum()), requestRate, Math.min(lowestRequestRate, requestRate)));
+    summary.append(String.format("%n  Item cache: %d of %d lookups hit (%.0f%%), %d misses shared a request in flight, "
+            + "%d items cached from the details of their set",
+        hits, lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups, coalescedItemLookups.sum(), cachedSetMembers.sum()));
+    summary.append(String.format("%n  Order evaluation: %.3f s", nanosToSeconds(evaluationNanos.sum())));
+    return summary.toString();
+  }
+
+  /**
+   * Appends the metrics of the current period as a single line of JSON to the metrics file,
+   * if one is configured in the properties.
+   */
+  public static void appendToMetricsFile() {
+    String metricsFile = PropertyManager.getMetricsFile();
+    if(metricsFile == null || metricsFile.isEmpty()) {
+      return;
+    }
+
+    JSONObject jsonMetrics = new JSONObject();
+    jsonMetrics.put("timestamp", System.currentTimeMillis());
+    jsonMetrics.put("period_ms", nanosToMillis(System.nanoTime() - periodStartNanos));
+    JSONObject jsonEndpoints = new JSONObject();
+    for(Map.Entry<String, EndpointMetrics> entry : endpointMetrics.entrySet()) {
+      EndpointMetrics metrics = entry.getValue();
+      JSONObject jsonEndpoint = new JSONObject();
+      jsonEndpoint.put("requests", metrics.requests.sum());
+      jsonEndpoint.put("failures", metrics.failures.sum());
+      jsonEndpoint.put("not_modified", metrics.notModified.sum());
+      jsonEndpoint.put("latency_p50_ms", nanosToMillis(metrics.latency.getPercentile(50)));
+      jsonEndpoint.put("latency_p90_ms", nanosToMillis(metrics.latency.getPercentile(90)));
+      jsonEndpoint.put("latency_p99_ms", nanosToMillis(metrics.latency.getPercentile(99)));
+      jsonEndpoint.put("latency_max_ms", nanosToMillis(metrics.latency.getPercentile(100)));
+      jsonEndpoint.put("parse_ms", nanosToMillis(metrics.parseNanos.sum()));
+      jsonEndpoint.put("bytes_received", metrics.bytesReceived.sum());
+      jsonEndpoints.put(entry.getKey(), jsonEndpoint);
+    }
+    jsonMetrics.put("endpoints", jsonEndpoints);
+    jsonMetrics.put("rate_limit_wait_ms", nanosToMillis(rateLimitWaitNanos.sum()));
+    jsonMetrics.put("request_rate", requestRate);
+    jsonMetrics.put("request_rate_lowest", Math.min(lowestRequestRate, requestRate));
+    jsonMetrics.put("item_cache_hits", itemCacheHits.sum());
+    jsonMetrics.put("item_cache_misses", itemCacheMisses.sum());
+    jsonMetrics.put("item_lookups_coalesced", coalescedItemLookups.sum());
+    jsonMetrics.put("item_set_members_cached", cachedSetMembers.sum());
+    jsonMetrics.put("evaluation_ms", nanosToMillis(evaluationNanos.sum()));
+
+    try(FileOutputStream fos = new FileOutputStream(metricsFile, true)) {
+      fos.write((jsonMetrics.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+  private static EndpointMetrics getEndpointMetrics(String endpoint) {
+    return endpointMetrics.computeIfAbsent(endpoint, key -> new EndpointMetrics());
+  }
+
+  private static long nanosToMillis(long nanos) {
+    return nanos / 1_000_000;
+  }
+
+  private static double nanosToSeconds(long nanos) {
+    return nanos / 1e9;
+  }
+
+  private static String formatBytes(long bytes) {
+    if(bytes < 1024) {
+      return bytes + " B";
+    }
+    if(bytes < 1024 * 1024) {
+      return String.format("%.1f KB", bytes / 1024.0);
+    }
+    return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+  }
+}
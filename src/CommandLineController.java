@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a single command passed as program arguments instead of the menu loop, so that the program
+ * can be used from scripts, e.g. "update --set veil=invisible --set suda=visible".
+ * Only the parts of the program that the command needs are initialized; commands that don't talk
+ * to Warframe Market neither set up the HTTP client nor load the JSON library.
+ */
+public class CommandLineController {
+  private static final String SET_OPTION = "--set";
+  private static final String ACCOUNT_OPTION = "--account";
+  private static final int EXIT_SUCCESS = 0;
+  private static final int EXIT_FAILURE = 1;
+  private static final int EXIT_INVALID_ARGUMENTS = 2;
+
+  /**
+   * Runs the command given by the program arguments.
+   * @param args the program arguments: a command, optionally followed by any number of
+   * "--set &lt;syndicate&gt;=&lt;visible/invisible&gt;" options that are applied before the command runs;
+   * "--account &lt;name&gt;" makes the following options and the status apply to another than the default account
+   * @return an int containing the exit code; 0 on success, 1 if the command failed, 2 if the arguments are invalid
+   */
+  public static int run(String[] args) {
+    String command = args[0];
+    //options in the order they were passed; an account selection is kept as a single element array
+    List<String[]> options = new ArrayList<>();
+    for(int i = 1; i < args.length; i++) {
+      String[] option = null;
+      if(i + 1 < args.length && args[i].equals(SET_OPTION)) {
+        option = args[i + 1].split("=", 2);
+      }
+      else if(i + 1 < args.length && args[i].equals(ACCOUNT_OPTION)) {
+        option = new String[] {args[i + 1]};
+      }
+      if(option == null || option.length == 1 && args[i].equals(SET_OPTION)) {
+        System.out.println("Invalid argument '" + args[i] + "'");
+        printUsage();
+        return EXIT_INVALID_ARGUMENTS;
+      }
+      i++;
+      options.add(option);
+    }
+    if(!command.equals("update") && !command.equals("index") && !command.equals("status")
+        && !command.equals("set")) {
+      printUsage();
+      return command.equals("help") ? EXIT_SUCCESS : EXIT_INVALID_ARGUMENTS;
+    }
+
+    PropertyManager.init();
+    //all options are checked before any is applied, so that rejected arguments never change a setting
+    for(String[] option : options) {
+      if(!isValidOption(option)) {
+        return EXIT_INVALID_ARGUMENTS;
+      }
+    }
+    for(String[] option : options) {
+      if(option.length == 1) {
+        MenuController.selectAccount(option[0]);
+      }
+      else {
+        MenuController.setSyndicateVisibility(option[0], option[1]);
+      }
+    }
+
+    boolean success = true;
+    switch(command) {
+      case "update":
+        initAPI();
+        success = MenuController.updateSiteOrderStatus();
+        break;
+      case "index":
+        initAPI();
+        success = MenuController.indexSiteOrderItems();
+        break;
+      case "status":
+        MenuController.printCurrentSyndicateStatus();
+        break;
+      default:
+        //"set" only applies the options
+        break;
+    }
+
+    PropertyManager.storeProperties();
+    ItemCache.store();
+    return success ? EXIT_SUCCESS : EXIT_FAILURE;
+  }
+
+  /**
+   * Checks an option without applying it and tells the user what is wrong with it.
+   * @param option an account selection as a single element array, or a Syndicate and its visibility
+   * @return whether the option can be applied
+   */
+  private static boolean isValidOption(String[] option) {
+    if(option.length == 1) {
+      if(PropertyManager.getAccount(option[0]) == null) {
+        System.out.println("There is no account '" + option[0] + "'");
+        return false;
+      }
+      return true;
+    }
+    try {
+      MenuController.visibilityStringToBoolean(option[1]);
+    }
+    catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      return false;
+    }
+    if(Syndicate.fromCommandName(option[0]) == null) {
+      System.out.println("Invalid argument for Syndicate");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Initializes everything required for requests to Warframe Market.
+   * The connection is not warmed up, since the first request follows right away.
+   */
+  private static void initAPI() {
+    APIRequestManager.init();
+    ItemCache.init();
+  }
+
+  private static void printUsage() {
+    System.out.println("Usage: [update/index/status/set] [--account <name>] [--set <syndicate>=<visible/invisible>]...\n"
+        + "Syndicates: " + MenuController.getSyndicateCommandNames() + "\n"
+        + "Without arguments the program starts in interactive mode; with 'daemon' it keeps updating orders.");
+  }
+}
@@ -0,0 +1,55 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prints the progress of order updates to console while they run.
+ * A line is printed at most once per interval for every account, so that long updates show
+ * how far they got without flooding the console; the first updated order is always reported.
+ */
+class ConsoleProgressListener implements UpdateProgress.Listener {
+  private static final long PRINT_INTERVAL_NANOS = 2_000_000_000L;
+  private final boolean printAccountNames;
+  //time of the last printed line by account name
+  private final Map<String, Long> lastPrintNanos = new HashMap<>();
+  //accounts whose first updated order has been reported
+  private final Set<String> firstUpdateReported = new HashSet<>();
+
+  /**
+   * @param printAccountNames whether every line should start with the name of the account it is about
+   */
+  ConsoleProgressListener(boolean printAccountNames) {
+    this.printAccountNames = printAccountNames;
+  }
+
+  @Override
+  public synchronized void onProgress(UpdateProgress progress) {
+    String accountName = progress.getAccount().getName();
+    String prefix = printAccountNames ? accountName + ": " : "";
+    UpdateProgress.Event event = progress.getEvent();
+    if(event == UpdateProgress.Event.ORDER_UPDATED && firstUpdateReported.add(accountName)) {
+      System.out.println(prefix + "First order updated after " + formatSeconds(progress.getElapsedNanos()) + ".");
+    }
+    //the final counts are printed by the caller once the update has finished
+    if(event == UpdateProgress.Event.ORDERS_FETCHED || event == UpdateProgress.Event.FINISHED) {
+      return;
+    }
+
+    //updates that finish within the first interval don't print any progress
+    if(progress.getElapsedNanos() - lastPrintNanos.getOrDefault(accountName, 0L) < PRINT_INTERVAL_NANOS) {
+      return;
+    }
+    lastPrintNanos.put(accountName, progress.getElapsedNanos());
+    long remainingNanos = progress.getEstimatedRemainingNanos();
+    System.out.println(prefix + progress.getEvaluatedOrders() + "/" + progress.getOrdersToEvaluate()
+        + " orders evaluated, " + progress.getLookedUpItems() + "/" + progress.getItemsToLookUp() + " items looked up, "
+        + (progress.getCompletedUpdates() + progress.getFailedUpdates()) + "/" + progress.getPlannedUpdates()
+        + " updates sent, " + String.format("%.1f", progress.getRequestsPerSecond()) + " requests/s, "
+        + "ETA " + (remainingNanos < 0 ? "unknown" : formatSeconds(remainingNanos)));
+  }
+
+  private static String formatSeconds(long nanos) {
+    return String.format("%.1f s", nanos / 1e9);
+  }
+}
@@ -0,0 +1,248 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.json.JSONObject;
+
+/**
+ * Lets scripts, hotkeys or overlays control a running program over HTTP on the loopback interface,
+ * so that they are served by a process whose caches and connections are already warm instead of starting
+ * a new one for every command. Only listens if a controlPort is set in the properties.
+ * Every request has to present the controlToken from the properties in the X-Control-Token header;
+ * since browsers never send such a header to another site without asking it first, web pages can't use the API.
+ * Commands, answered with JSON; "?account=&lt;name&gt;" makes the first two apply to another than the default account:
+ * "GET /status", "POST /syndicate/&lt;syndicate&gt;/&lt;visible/invisible&gt;" and "POST /update",
+ * which updates the orders of all accounts and answers once the update has finished.
+ */
+public class ControlServer {
+  private static final String TOKEN_HEADER = "X-Control-Token";
+  private static final int TOKEN_BYTES = 24;
+  //a status request is answered while an update is running; further requests wait
+  private static final int HANDLER_THREADS = 2;
+  private static HttpServer server;
+  private static ExecutorService handlerExecutor;
+
+  /**
+   * Starts listening for commands if a control port is set; generates a token first if none is set yet.
+   */
+  public static synchronized void start() {
+    int port = PropertyManager.getControlPort();
+    if(port <= 0 || server != null) {
+      return;
+    }
+    if(PropertyManager.getControlToken() == null || PropertyManager.getControlToken().isEmpty()) {
+      byte[] token = new byte[TOKEN_BYTES];
+      new SecureRandom().nextBytes(token);
+      StringBuilder hexToken = new StringBuilder(TOKEN_BYTES * 2);
+      for(byte b : token) {
+        hexToken.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      PropertyManager.setControlToken(hexToken.toString());
+    }
+
+    //small responses would otherwise wait for the delayed acknowledgement of the previous packet
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    try {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    }
+    catch (IOException e) {
+      System.out.println("Could not start the control API on port " + port + ": " + e.getMessage());
+      return;
+    }
+    handlerExecutor = Executors.newFixedThreadPool(HANDLER_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "control-api");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(handlerExecutor);
+    server.createContext("/", ControlServer::handle);
+    server.start();
+    System.out.println("Control API listening on http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+        + port + "; the controlToken is in user_info.properties.");
+  }
+
+  /**
+   * Stops listening; commands that are being handled are not waited for.
+   */
+  public static synchronized void stop() {
+    if(server == null) {
+      return;
+    }
+    server.stop(0);
+    handlerExecutor.shutdownNow();
+    server = null;
+  }
+
+  private static void handle(HttpExchange exchange) throws IOException {
+    try {
+      if(!hasValidToken(exchange)) {
+        sendResponse(exchange, 401, error("Missing or wrong " + TOKEN_HEADER + " header"));
+        return;
+      }
+      route(exchange);
+    }
+    catch (RuntimeException e) {
+      sendResponse(exchange, 500, error(String.valueOf(e)));
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private static void route(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String[] path = exchange.getRequestURI().getPath().split("/");
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    //path[0] is empty
+    String command = path.length > 1 ? path[1] : "";
+    boolean expectedMethod;
+    switch(command) {
+      case "status":
+        expectedMethod = method.equals("GET");
+        break;
+      case "syndicate":
+      case "update":
+        expectedMethod = method.equals("POST");
+        break;
+      default:
+        sendResponse(exchange, 404, error("Unknown command, use /status, /syndicate or /update"));
+        return;
+    }
+    if(!expectedMethod) {
+      sendResponse(exchange, 405, error("Method not allowed"));
+      return;
+    }
+
+    if(command.equals("update")) {
+      handleUpdate(exchange);
+      return;
+    }
+    String accountName = query.getOrDefault("account", Account.DEFAULT_NAME);
+    Account account = PropertyManager.getAccount(accountName);
+    if(account == null) {
+      sendResponse(exchange, 404, error("There is no account '" + accountName + "'"));
+      return;
+    }
+    if(command.equals("status")) {
+      sendResponse(exchange, 200, getStatus(account));
+    }
+    else if(path.length != 4) {
+      sendResponse(exchange, 400, error("Use /syndicate/<" + MenuController.getSyndicateCommandNames()
+          + ">/<visible/invisible>"));
+    }
+    else {
+      handleSyndicate(exchange, account, path[2], path[3]);
+    }
+  }
+
+  private static void handleSyndicate(HttpExchange exchange, Account account, String syndicateName,
+      String visibility) throws IOException {
+    Syndicate syndicate = Syndicate.fromCommandName(syndicateName);
+    if(syndicate == null) {
+      sendResponse(exchange, 400, error("Invalid argument for Syndicate"));
+      return;
+    }
+    try {
+      account.setVisible(syndicate, MenuController.visibilityStringToBoolean(visibility));
+    }
+    catch (IllegalArgumentException e) {
+      sendResponse(exchange, 400, error(e.getMessage()));
+      return;
+    }
+    sendResponse(exchange, 200, getStatus(account));
+  }
+
+  /**
+   * Updates all sell orders of all accounts that require it, like the 'update' command.
+   * Answers with the number of updated orders or the error of every account; with 502 if any account failed.
+   */
+  private static void handleUpdate(HttpExchange exchange) throws IOException {
+    long startNanos = System.nanoTime();
+    Map<Account, CompletableFuture<Integer>> pendingUpdates =
+        JSONProcessor.updateAffectedOrders(PropertyManager.getAccounts());
+    JSONObject jsonAccounts = new JSONObject();
+    boolean success = true;
+    for(Map.Entry<Account, CompletableFuture<Integer>> entry : pendingUpdates.entrySet()) {
+      JSONObject jsonAccount = new JSONObject();
+      try {
+        jsonAccount.put("updated_orders", entry.getValue().join());
+      }
+      catch (CompletionException e) {
+        Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+        jsonAccount.put("error", "Could not reach Warframe Market: " + cause);
+        success = false;
+      }
+      jsonAccounts.put(entry.getKey().getName(), jsonAccount);
+    }
+    //the program is expected to keep running, so newly looked up items are persisted right away
+    ItemCache.store();
+
+    JSONObject jsonResponse = new JSONObject();
+    jsonResponse.put("accounts", jsonAccounts);
+    jsonResponse.put("duration_ms", (System.nanoTime() - startNanos) / 1_000_000);
+    sendResponse(exchange, success ? 200 : 502, jsonResponse);
+  }
+
+  /**
+   * @return a JSONObject containing the name of the account and the visibility of every Syndicate by command name
+   */
+  private static JSONObject getStatus(Account account) {
+    JSONObject jsonSyndicates = new JSONObject();
+    for(Syndicate syndicate : Syndicate.values()) {
+      jsonSyndicates.put(syndicate.getCommandName(), account.getVisible(syndicate) ? "visible" : "invisible");
+    }
+    JSONObject jsonStatus = new JSONObject();
+    jsonStatus.put("account", account.getName());
+    jsonStatus.put("syndicates", jsonSyndicates);
+    return jsonStatus;
+  }
+
+  private static boolean hasValidToken(HttpExchange exchange) {
+    String token = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+    String controlToken = PropertyManager.getControlToken();
+    //compared in constant time, so that the token can't be guessed from how long requests take
+    return token != null && controlToken != null && MessageDigest.isEqual(
+        token.getBytes(StandardCharsets.UTF_8), controlToken.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    if(rawQuery == null) {
+      return query;
+    }
+    for(String parameter : rawQuery.split("&")) {
+      String[] keyValue = parameter.split("=", 2);
+      if(keyValue.length == 2) {
+        query.put(URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8),
+            URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8));
+      }
+    }
+    return query;
+  }
+
+  private static JSONObject error(String message) {
+    return new JSONObject().put("error", message);
+  }
+
+  private static void sendResponse(HttpExchange exchange, int statusCode, JSONObject json) throws IOException {
+    byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(statusCode, body.length);
+    try(OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the program without user input, updating the orders on Warframe Market in regular intervals
+ * according to the Syndicate visibility settings, until the program is stopped.
+ * Since the program keeps running, every update after the first only evaluates the orders that changed
+ * on the profile or whose Syndicates changed visibility since the previous one.
+ * The properties file is only read at the start and is overwritten with the properties in memory whenever
+ * a property changes, e.g. the JWT after every order update; settings are changed through the ControlServer.
+ */
+public class DaemonController {
+  //the interval between two updates is varied randomly by up to this fraction in both directions,
+  //so that programs started at the same time don't keep making their requests at the same time
+  private static final double INTERVAL_JITTER = 0.1;
+  //an update never starts sooner than this after the previous one ended, even if that one overran the interval
+  private static final long MIN_PAUSE_MILLIS = 60 * 1000;
+  private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+  /**
+   * Starts the update loop. Updates run one after another on the calling thread, so a slow update
+   * delays the next one instead of overlapping with it.
+   */
+  public static void updateLoop() {
+    long intervalMillis = PropertyManager.getDaemonIntervalMinutes() * 60 * 1000;
+    log("Running as daemon, updating orders about every " + PropertyManager.getDaemonIntervalMinutes()
+        + " minutes. Stop the program to end, and before editing user_info.properties.");
+    while(true) {
+      long startMillis = System.currentTimeMillis();
+      runUpdate();
+      long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+      long pauseMillis = jitter(intervalMillis) - elapsedMillis;
+      if(pauseMillis < MIN_PAUSE_MILLIS) {
+        if(elapsedMillis > intervalMillis) {
+          log("The update took longer than the interval, the next one is delayed.");
+        }
+        pauseMillis = MIN_PAUSE_MILLIS;
+      }
+      try {
+        Thread.sleep(pauseMillis);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Updates all orders of all accounts that require it and logs the outcome. Failed updates are logged and left
+   * for the next update to catch up on, so that temporary problems with Warframe Market don't stop the loop.
+   */
+  private static void runUpdate() {
+    ApiMetrics.reset();
+    long startNanos = System.nanoTime();
+    Map<Account, CompletableFuture<Integer>> pendingUpdates =
+        JSONProcessor.updateAffectedOrders(PropertyManager.getAccounts());
+    for(Map.Entry<Account, CompletableFuture<Integer>> entry : pendingUpdates.entrySet()) {
+      String prefix = pendingUpdates.size() > 1 ? entry.getKey().getName() + ": " : "";
+      try {
+        int updatedOrders = entry.getValue().join();
+        log(String.format("%sUpdated %d orders in %.1f s.", prefix, updatedOrders,
+            (System.nanoTime() - startNanos) / 1e9));
+      }
+      catch (CompletionException e) {
+        Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+        log(prefix + "Could not reach Warframe Market, retrying with the next update: " + cause);
+      }
+    }
+    ApiMetrics.appendToMetricsFile();
+    //the program is not expected to exit regularly, so newly looked up items are persisted right away
+    ItemCache.store();
+  }
+
+  private static long jitter(long intervalMillis) {
+    double factor = 1 + ThreadLocalRandom.current().nextDouble(-INTERVAL_JITTER, INTERVAL_JITTER);
+    return (long) (intervalMillis * factor);
+  }
+
+  private static void log(String message) {
+    System.out.println("[" + LocalDateTime.now().format(TIMESTAMP_FORMAT) + "] " + message);
+  }
+}
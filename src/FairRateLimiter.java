@@ -0,0 +1,100 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Shares the permits of a single RateLimiter fairly between several accounts.
+ * Every account gets its own queue of waiting callers and permits are handed out round-robin between
+ * all accounts that are waiting, so an account with a large backlog can't delay the requests of other
+ * accounts by more than one permit each, while no permit goes unused as long as anyone is waiting.
+ * Implemented as start-time fair queuing: every caller is tagged with the number of permits its account
+ * will have been granted once the caller gets its permit, counted from the point where the account last
+ * went idle, and waiting callers are served in the order of their tags.
+ * Callers of a higher RequestPriority are always served before those of a lower one.
+ */
+public class FairRateLimiter {
+  private final RateLimiter rateLimiter;
+  //waiting callers, the one to be served next first
+  private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+  //tag of the last caller of every account
+  private final Map<String, Long> lastTags = new HashMap<>();
+  //tag of the caller served most recently; accounts that were idle continue from here
+  private long virtualTime = 0;
+  private long arrivals = 0;
+  //whether a caller is currently waiting for the RateLimiter; only one at a time, so the order is kept
+  private boolean dispatching = false;
+
+  /**
+   * A caller waiting for its permit. Callers with the same priority and tag are served in the order they arrived.
+   */
+  private static class Waiter implements Comparable<Waiter> {
+    private final RequestPriority priority;
+    private final long tag;
+    private final long arrival;
+
+    private Waiter(RequestPriority priority, long tag, long arrival) {
+      this.priority = priority;
+      this.tag = tag;
+      this.arrival = arrival;
+    }
+
+    @Override
+    public int compareTo(Waiter other) {
+      int byPriority = priority.compareTo(other.priority);
+      if(byPriority != 0) {
+        return byPriority;
+      }
+      int byTag = Long.compare(tag, other.tag);
+      return byTag != 0 ? byTag : Long.compare(arrival, other.arrival);
+    }
+  }
+
+  /**
+   * @param rateLimiter the RateLimiter whose permits are shared
+   */
+  public FairRateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Takes a permit on behalf of an account and blocks until it is the account's turn and the permit is available.
+   * @param accountName the name of the account that the permit counts towards
+   * @param priority the RequestPriority of the request that the permit is for
+   * @return a long containing the time in nanoseconds that the caller had to wait for the permit
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public long acquire(String accountName, RequestPriority priority) throws InterruptedException {
+    long startNanos = System.nanoTime();
+    synchronized(this) {
+      long tag = Math.max(virtualTime, lastTags.getOrDefault(accountName, 0L)) + 1;
+      lastTags.put(accountName, tag);
+      Waiter waiter = new Waiter(priority, tag, arrivals++);
+      waiters.add(waiter);
+      try {
+        while(dispatching || waiters.peek() != waiter) {
+          wait();
+        }
+      }
+      catch (InterruptedException e) {
+        waiters.remove(waiter);
+        notifyAll();
+        throw e;
+      }
+      waiters.poll();
+      //a caller of a higher priority may be served ahead of earlier tags, which must not turn back the clock
+      virtualTime = Math.max(virtualTime, tag);
+      dispatching = true;
+    }
+
+    try {
+      rateLimiter.acquire();
+    }
+    finally {
+      synchronized(this) {
+        dispatching = false;
+        notifyAll();
+      }
+    }
+    return System.nanoTime() - startNanos;
+  }
+}
@@ -0,0 +1,292 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Persistent cache for the bodies of responses from the Warframe Market API that rarely change,
+ * such as the item catalog and item details, together with the validators (ETag and Last-Modified)
+ * that the API sent with them. Requests for a cached body carry the validators, so that the API can answer
+ * with 304 (not modified) instead of sending the whole body again; the body is then read from the local copy.
+ * Every response is stored in a file of its own within the cache directory, named after a hash of its URL.
+ * File format: the header lines "ETag: &lt;value&gt;" and "Last-Modified: &lt;value&gt;", each only if the
+ * response had that validator, followed by an empty line and the decoded response body.
+ */
+public class HttpResponseCache {
+  private static final String CACHE_DIRECTORY_LOCATION = "http_cache";
+  private static final String ENTRY_FILE_SUFFIX = ".http";
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+  private static final String HEADER_SEPARATOR = ": ";
+  //header lines longer than this can only stem from a damaged file
+  private static final int MAX_HEADER_LINE_LENGTH = 8192;
+
+  /**
+   * The validators of a cached response, which tell the API which version of the body is cached.
+   */
+  public static class Validators {
+    private final String eTag;
+    private final String lastModified;
+
+    private Validators(String eTag, String lastModified) {
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+
+    /**
+     * @return a String containing the ETag of the cached response; null if it had none
+     */
+    public String getETag() {
+      return eTag;
+    }
+
+    /**
+     * @return a String containing the Last-Modified date of the cached response; null if it had none
+     */
+    public String getLastModified() {
+      return lastModified;
+    }
+  }
+
+  /**
+   * Passes a response body through while it is read and writes it to a temporary file along the way.
+   * The temporary file only replaces the cached response once commit() is called, so that bodies that
+   * could not be read or parsed completely are never cached.
+   */
+  public static class PendingEntry extends FilterInputStream {
+    private final Path entryFile;
+    private Path tempFile;
+    private OutputStream tempOutput;
+
+    private PendingEntry(InputStream body, Path entryFile, Validators validators) {
+      super(body);
+      this.entryFile = entryFile;
+      try {
+        Files.createDirectories(entryFile.getParent());
+        tempFile = Files.createTempFile(entryFile.getParent(), "entry", ".tmp");
+        tempOutput = Files.newOutputStream(tempFile);
+        tempOutput.write(buildHeader(validators));
+      }
+      catch (IOException e) {
+        //the response is still passed on, it is just not cached
+        discard();
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if(b >= 0 && tempOutput != null) {
+        try {
+          tempOutput.write(b);
+        }
+        catch (IOException e) {
+          discard();
+        }
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if(read > 0 && tempOutput != null) {
+        try {
+          tempOutput.write(b, off, read);
+        }
+        catch (IOException e) {
+          discard();
+        }
+      }
+      return read;
+    }
+
+    /**
+     * Reads the rest of the body and puts it in place of the cached response for its URL.
+     * Has to be called after the body has been parsed successfully and before the stream is closed.
+     * @throws IOException if the rest of the body could not be read
+     */
+    public void commit() throws IOException {
+      //the parser may stop before the end of the body, e.g. at trailing whitespace
+      byte[] buffer = new byte[8192];
+      while(read(buffer, 0, buffer.length) >= 0) {
+        //everything read is written to the temporary file
+      }
+      if(tempOutput == null) {
+        return;
+      }
+      try {
+        tempOutput.close();
+        tempOutput = null;
+        try {
+          Files.move(tempFile, entryFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+          Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        tempFile = null;
+      }
+      catch (IOException e) {
+        //e.g. because the cached response is being read at the same time on a system that locks open files;
+        //the older copy stays valid, since its validators are stored along with it
+        discard();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      discard();
+      super.close();
+    }
+
+    private void discard() {
+      try {
+        if(tempOutput != null) {
+          tempOutput.close();
+        }
+        if(tempFile != null) {
+          Files.deleteIfExists(tempFile);
+        }
+      }
+      catch (IOException e) {
+        //a leftover temporary file is harmless
+      }
+      tempOutput = null;
+      tempFile = null;
+    }
+  }
+
+  /**
+   * Looks up the validators of the cached response for a URL.
+   * @param url a String containing the URL of the request
+   * @return the Validators of the cached response; null if no response is cached for the URL
+   */
+  public static Validators getValidators(String url) {
+    try(InputStream instream = new BufferedInputStream(Files.newInputStream(getEntryFile(url)))) {
+      return readValidators(instream);
+    }
+    catch (NoSuchFileException e) {
+      //nothing cached yet
+      return null;
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Opens the body of the cached response for a URL.
+   * @param url a String containing the URL of the request
+   * @return an InputStream providing the cached body, which has to be closed by the caller
+   * @throws NoSuchFileException if no response is cached for the URL
+   * @throws IOException if the cached response could not be read
+   */
+  public static InputStream openBody(String url) throws IOException {
+    InputStream instream = new BufferedInputStream(Files.newInputStream(getEntryFile(url)));
+    try {
+      //skips the header, leaving the stream at the start of the body
+      if(readValidators(instream) == null) {
+        throw new IOException("Cached response for " + url + " is damaged");
+      }
+      return instream;
+    }
+    catch (IOException e) {
+      instream.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Starts caching a response body while it is being read.
+   * @param url a String containing the URL of the request
+   * @param eTag a String containing the ETag of the response; null if it has none
+   * @param lastModified a String containing the Last-Modified date of the response; null if it has none
+   * @param body the InputStream providing the decoded response body
+   * @return a PendingEntry to read the body from, which caches it once committed
+   */
+  public static PendingEntry store(String url, String eTag, String lastModified, InputStream body) {
+    return new PendingEntry(body, getEntryFile(url), new Validators(eTag, lastModified));
+  }
+
+  /**
+   * Reads the header of a cached response.
+   * @param instream the InputStream providing the cached response from its start
+   * @return the Validators from the header; null if the header is incomplete
+   * @throws IOException if reading fails
+   */
+  private static Validators readValidators(InputStream instream) throws IOException {
+    String eTag = null;
+    String lastModified = null;
+    String line;
+    while((line = readHeaderLine(instream)) != null) {
+      if(line.isEmpty()) {
+        return new Validators(eTag, lastModified);
+      }
+      if(line.startsWith(ETAG + HEADER_SEPARATOR)) {
+        eTag = line.substring(ETAG.length() + HEADER_SEPARATOR.length());
+      }
+      else if(line.startsWith(LAST_MODIFIED + HEADER_SEPARATOR)) {
+        lastModified = line.substring(LAST_MODIFIED.length() + HEADER_SEPARATOR.length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reads a single line of the header byte by byte, so that the stream stays at the start of the next line.
+   * @return a String containing the line without its line break; null if the header ends prematurely
+   */
+  private static String readHeaderLine(InputStream instream) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while((b = instream.read()) >= 0 && b != '\n') {
+      if(line.size() == MAX_HEADER_LINE_LENGTH) {
+        return null;
+      }
+      line.write(b);
+    }
+    return b < 0 ? null : line.toString(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] buildHeader(Validators validators) {
+    StringBuilder header = new StringBuilder();
+    if(validators.eTag != null) {
+      header.append(ETAG).append(HEADER_SEPARATOR).append(validators.eTag).append('\n');
+    }
+    if(validators.lastModified != null) {
+      header.append(LAST_MODIFIED).append(HEADER_SEPARATOR).append(validators.lastModified).append('\n');
+    }
+    return header.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param url a String containing the URL of a request
+   * @return the Path of the file that the response for the URL is cached in
+   */
+  private static Path getEntryFile(String url) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+      StringBuilder fileName = new StringBuilder(hash.length * 2 + ENTRY_FILE_SUFFIX.length());
+      for(byte b : hash) {
+        fileName.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return Paths.get(CACHE_DIRECTORY_LOCATION, fileName.append(ENTRY_FILE_SUFFIX).toString());
+    }
+    catch (NoSuchAlgorithmException e) {
+      //every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Persistent cache for item metadata retrieved from the Warframe Market API.
+ * Maps an item's url_name to the Syndicates that the item can be acquired from,
+ * so that repeated lookups for the same item do not require another request to the API.
+ * Entries expire after a configurable time to live and the least recently used entries are
+ * evicted once the configured maximum number of entries is exceeded.
+ */
+public class ItemCache {
+  private static final String CACHE_FILE_LOCATION = "item_cache.properties";
+  //separates the timestamp of an entry from its list of Syndicates in the cache file
+  private static final String VALUE_SEPARATOR = ";";
+  //separates the individual Syndicates of an entry in the cache file
+  private static final String SYNDICATE_SEPARATOR = ",";
+
+  private static LinkedHashMap<String, CacheEntry> entries;
+  private static long timeToLiveMillis;
+  private static int maxEntries;
+
+  /**
+   * A cached mask of Syndicate drop sources together with the time it was retrieved at.
+   */
+  private static class CacheEntry {
+    private final long timestamp;
+    private final int syndicateMask;
+
+    private CacheEntry(long timestamp, int syndicateMask) {
+      this.timestamp = timestamp;
+      this.syndicateMask = syndicateMask;
+    }
+  }
+
+  public static synchronized void init() {
+    timeToLiveMillis = PropertyManager.getItemCacheTTLHours() * 60L * 60L * 1000L;
+    maxEntries = PropertyManager.getItemCacheMaxEntries();
+    //access order makes the eldest entry the least recently used one
+    entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    loadEntries();
+  }
+
+  /**
+   * Looks up the Syndicate drop sources for an item.
+   * @param urlName the url_name of the item to look up
+   * @return an Integer containing the mask of all Syndicate drop sources for the item;
+   * null if the item is not cached or its entry has expired
+   */
+  public static synchronized Integer get(String urlName) {
+    CacheEntry entry = entries.get(urlName);
+    if(entry == null) {
+      return null;
+    }
+    if(isExpired(entry, System.currentTimeMillis())) {
+      entries.remove(urlName);
+      return null;
+    }
+    return entry.syndicateMask;
+  }
+
+  /**
+   * Stores the Syndicate drop sources for an item.
+   * @param urlName the url_name of the item
+   * @param syndicateMask an int mask of all Syndicate drop sources for the item; may be 0
+   */
+  public static synchronized void put(String urlName, int syndicateMask) {
+    entries.put(urlName, new CacheEntry(System.currentTimeMillis(), syndicateMask));
+  }
+
+  /**
+   * Persists all entries that have not expired yet to the cache file.
+   */
+  public static synchronized void store() {
+    if(entries == null) {
+      return;
+    }
+    Properties properties = new Properties();
+    long now = System.currentTimeMillis();
+    for(Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+      CacheEntry cacheEntry = entry.getValue();
+      if(isExpired(cacheEntry, now)) {
+        continue;
+      }
+      //Syndicates are stored by name, so that the file stays valid when Syndicates are added
+      List<String> syndicateNames = new ArrayList<>();
+      for(Syndicate syndicate : Syndicate.fromMask(cacheEntry.syndicateMask)) {
+        syndicateNames.add(syndicate.getSourceName());
+      }
+      properties.setProperty(entry.getKey(), cacheEntry.timestamp + VALUE_SEPARATOR
+          + String.join(SYNDICATE_SEPARATOR, syndicateNames));
+    }
+
+    try {
+      FileOutputStream fos = new FileOutputStream(CACHE_FILE_LOCATION);
+      properties.store(fos, null);
+      fos.close();
+    }
+    catch (IOException e) {
+      //losing the cache only costs additional requests on the next start
+      System.out.println(e.getMessage());
+    }
+  }
+
+  /**
+   * Loads all entries that have not expired yet from the cache file.
+   * Entries are inserted oldest first so that the oldest ones are evicted first.
+   */
+  private static void loadEntries() {
+    Properties properties = new Properties();
+    try {
+      FileInputStream inputStream = new FileInputStream(CACHE_FILE_LOCATION);
+      properties.load(inputStream);
+      inputStream.close();
+    }
+    catch (FileNotFoundException e) {
+      //nothing cached yet
+      return;
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+      return;
+    }
+
+    List<Map.Entry<String, CacheEntry>> loadedEntries = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    for(String urlName : properties.stringPropertyNames()) {
+      CacheEntry entry = parseEntry(properties.getProperty(urlName));
+      if(entry == null || isExpired(entry, now)) {
+        continue;
+      }
+      loadedEntries.add(new AbstractMap.SimpleEntry<>(urlName, entry));
+    }
+    loadedEntries.sort((a, b) -> Long.compare(a.getValue().timestamp, b.getValue().timestamp));
+    for(Map.Entry<String, CacheEntry> entry : loadedEntries) {
+      entries.put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Parses a value from the cache file into a CacheEntry.
+   * @param value a String in the format "timestamp;Syndicate,Syndicate,..."
+   * @return the parsed CacheEntry; null if the value is malformed or names an unknown Syndicate
+   */
+  private static CacheEntry parseEntry(String value) {
+    int separatorIndex = value.indexOf(VALUE_SEPARATOR);
+    if(separatorIndex < 0) {
+      return null;
+    }
+    long timestamp;
+    try {
+      timestamp = Long.parseLong(value.substring(0, separatorIndex));
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+    String strSyndicates = value.substring(separatorIndex + 1);
+    int syndicateMask = 0;
+    if(!strSyndicates.isEmpty()) {
+      for(String sourceName : strSyndicates.split(SYNDICATE_SEPARATOR)) {
+        Syndicate syndicate = Syndicate.fromSourceName(sourceName);
+        if(syndicate == null) {
+          return null;
+        }
+        syndicateMask |= syndicate.getMask();
+      }
+    }
+    return new CacheEntry(timestamp, syndicateMask);
+  }
+
+  private static boolean isExpired(CacheEntry entry, long now) {
+    return now - entry.timestamp > timeToLiveMillis;
+  }
+}
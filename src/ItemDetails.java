@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the parts of an item details response from the Warframe Market API that the program needs:
+ * the item's ID and, for every item in the same set, its ID, url_name and English drop source names.
+ * Instances are extracted from the response in a single streaming pass, skipping everything else,
+ * such as the descriptions in all other languages.
+ */
+public class ItemDetails {
+  private final String id;
+  private final List<SetMember> itemsInSet;
+
+  /**
+   * An item that shares a set with the requested item; the requested item itself is one as well.
+   */
+  public static class SetMember {
+    private final String id;
+    private final String urlName;
+    private final List<String> dropNames;
+
+    private SetMember(String id, String urlName, List<String> dropNames) {
+      this.id = id;
+      this.urlName = urlName;
+      this.dropNames = dropNames;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return a String containing the url_name of the item; null if the response didn't contain it
+     */
+    public String getUrlName() {
+      return urlName;
+    }
+
+    public List<String> getDropNames() {
+      return dropNames;
+    }
+  }
+
+  private ItemDetails(String id, List<SetMember> itemsInSet) {
+    this.id = id;
+    this.itemsInSet = itemsInSet;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public List<SetMember> getItemsInSet() {
+    return itemsInSet;
+  }
+
+  /**
+   * Locates the requested item within the items of its set and returns its drop source names.
+   * @return a List of Strings containing the English names of all drop sources of the requested item;
+   * empty if the item could not be located
+   */
+  public List<String> getDropNames() {
+    //if only 1 element is in the set it automatically is the requested item
+    if(itemsInSet.size() == 1) {
+      return itemsInSet.get(0).dropNames;
+    }
+    for(SetMember setMember : itemsInSet) {
+      if(setMember.id.equals(id)) {
+        return setMember.dropNames;
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Extracts the ItemDetails from a JSON String containing an item details response.
+   * @param jsonItemDetails a JSON String containing the full details for an item
+   * @return the extracted ItemDetails
+   * @throws IOException if the JSON String is malformed
+   */
+  public static ItemDetails parse(String jsonItemDetails) throws IOException {
+    return parse(new StringReader(jsonItemDetails));
+  }
+
+  /**
+   * Extracts the ItemDetails from a Reader providing an item details response.
+   * Expected structure:
+   * {"payload": {"item": {"id": ..., "items_in_set": [{"id": ..., "url_name": ..., "en": {"drop": [{"name": ...}]}}]}}}
+   * @param reader the Reader providing the JSON text
+   * @return the extracted ItemDetails
+   * @throws IOException if reading fails or the JSON text is malformed
+   */
+  public static ItemDetails parse(Reader reader) throws IOException {
+    JsonPullParser parser = new JsonPullParser(reader);
+    String id = null;
+    List<SetMember> itemsInSet = new ArrayList<>();
+
+    parser.beginObject();
+    while(parser.hasNext()) {
+      if(!parser.nextName().equals("payload")) {
+        parser.skipValue();
+        continue;
+      }
+      parser.beginObject();
+      while(parser.hasNext()) {
+        if(!parser.nextName().equals("item")) {
+          parser.skipValue();
+          continue;
+        }
+        parser.beginObject();
+        while(parser.hasNext()) {
+          String name = parser.nextName();
+          if(name.equals("id")) {
+            id = parser.nextString();
+          }
+          else if(name.equals("items_in_set")) {
+            parser.beginArray();
+            while(parser.hasNext()) {
+              itemsInSet.add(parseSetMember(parser));
+            }
+            parser.endArray();
+          }
+          else {
+            parser.skipValue();
+          }
+        }
+        parser.endObject();
+      }
+      parser.endObject();
+    }
+    parser.endObject();
+
+    if(id == null) {
+      throw new IOException("Item details contain no item ID");
+    }
+    return new ItemDetails(id, itemsInSet);
+  }
+
+  private static SetMember parseSetMember(JsonPullParser parser) throws IOException {
+    String id = null;
+    String urlName = null;
+    List<String> dropNames = Collections.emptyList();
+    parser.beginObject();
+    while(parser.hasNext()) {
+      String name = parser.nextName();
+      if(name.equals("id")) {
+        id = parser.nextString();
+      }
+      else if(name.equals("url_name")) {
+        urlName = parser.nextString();
+      }
+      else if(name.equals("en")) {
+        dropNames = parseEnglishDropNames(parser);
+      }
+      else {
+        parser.skipValue();
+      }
+    }
+    parser.endObject();
+    return new SetMember(id, urlName, dropNames);
+  }
+
+  private static List<String> parseEnglishDropNames(JsonPullParser parser) throws IOException {
+    List<String> dropNames = new ArrayList<>();
+    parser.beginObject();
+    while(parser.hasNext()) {
+      if(!parser.nextName().equals("drop")) {
+        parser.skipValue();
+        continue;
+      }
+      parser.beginArray();
+      while(parser.hasNext()) {
+        parser.beginObject();
+        while(parser.hasNext()) {
+          if(parser.nextName().equals("name")) {
+            dropNames.add(parser.nextString());
+          }
+          else {
+            parser.skipValue();
+          }
+        }
+        parser.endObject();
+      }
+      parser.endArray();
+    }
+    parser.endObject();
+    return dropNames;
+  }
+}
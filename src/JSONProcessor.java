@@ -1,181 +1,249 @@
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Processes more complicated JSON Strings from Warframe Market API responses
  * and makes complicated decisions based on API data. Very complex.
  */
 public class JSONProcessor {
-  private static final String[] SYNDICATE_SOURCES = {
-      "New Loka", "Perrin Sequence", "Red Veil",
-      "Steel Meridian", "Cephalon Suda", "Arbiters of Hexis"
+  //runs the update of every account on a thread of its own
+  private static final Executor accountUpdateExecutor = runnable -> {
+    Thread thread = new Thread(runnable, "account-update");
+    thread.setDaemon(true);
+    thread.start();
   };
 
   /**
-   * Updates all sell orders on the user's Warframe Market profile that require it,
-   * based on the visibility settings for Syndicates within the program.
+   * Updates the sell orders of several accounts at the same time, each like updateAffectedOrders(Account).
+   * The accounts share the permitted request rate fairly, so all of them progress at the same pace.
+   * @param accounts the Accounts whose orders should be updated
+   * @return a Map containing a CompletableFuture for every account that completes with the number of orders
+   * that have been updated; completes exceptionally with an UncheckedIOException if the update failed
+   */
+  public static Map<Account, CompletableFuture<Integer>> updateAffectedOrders(List<Account> accounts) {
+    return updateAffectedOrders(accounts, null);
+  }
+
+  /**
+   * Updates the sell orders of several accounts at the same time and publishes the progress of every account.
+   * @param accounts the Accounts whose orders should be updated
+   * @param listener the UpdateProgress.Listener that the progress of all accounts is published to;
+   * may be null if progress is not of interest
+   * @return a Map containing a CompletableFuture for every account that completes with the number of orders
+   * that have been updated; completes exceptionally with an UncheckedIOException if the update failed
+   */
+  public static Map<Account, CompletableFuture<Integer>> updateAffectedOrders(List<Account> accounts,
+      UpdateProgress.Listener listener) {
+    Map<Account, CompletableFuture<Integer>> pendingUpdates = new LinkedHashMap<>();
+    for(Account account : accounts) {
+      pendingUpdates.put(account,
+          CompletableFuture.supplyAsync(() -> updateAffectedOrders(account, listener), accountUpdateExecutor));
+    }
+    return pendingUpdates;
+  }
+
+  /**
+   * Updates all sell orders on the Warframe Market profile of an account that require it,
+   * based on the account's visibility settings for Syndicates within the program.
+   * Only orders that changed since the last update or whose Syndicates changed visibility are evaluated.
+   * Updates that a previous run planned but could not complete are finished first.
+   * Every order is evaluated as soon as the Syndicates of its item are known and updated as soon as it has been
+   * evaluated, so orders whose items are cached are updated right away, while the other items are looked up.
+   * @param account the Account whose orders should be updated
+   * @return an int containing the number of orders that have been updated
+   * @throws UncheckedIOException if the orders or item info could not be requested;
+   * the orders whose items were known may have been updated then
+   */
+  public static int updateAffectedOrders(Account account) {
+    return updateAffectedOrders(account, (UpdateProgress.Listener) null);
+  }
+
+  /**
+   * Updates all sell orders of an account that require it like updateAffectedOrders(Account)
+   * and publishes the progress of the update.
+   * @param account the Account whose orders should be updated
+   * @param listener the UpdateProgress.Listener that the progress is published to;
+   * may be null if progress is not of interest
    * @return an int containing the number of orders that have been updated
+   * @throws UncheckedIOException if the orders or item info could not be requested;
+   * the orders whose items were known may have been updated then
    */
-  public static int updateAffectedOrders() {
-    int updatedOrders = 0;
-    String jsonAllUserOrders = APIRequestManager.getAllOrdersFromOwnProfile();
-    JSONArray sellOrders = new JSONObject(jsonAllUserOrders)
-        .getJSONObject("payload").getJSONArray("sell_orders");
-    for(int i = 0; i < sellOrders.length(); i++) {
-      JSONObject currentOrder = sellOrders.getJSONObject(i);
-      if(!isUpdateCandidate(currentOrder)) {
-        continue;
+  public static int updateAffectedOrders(Account account, UpdateProgress.Listener listener) {
+    OrderSnapshot orderSnapshot = account.getOrderSnapshot();
+    UpdateProgressTracker progress = new UpdateProgressTracker(account, listener);
+    //updates of the same account run one after another, updates of different accounts at the same time
+    synchronized(orderSnapshot) {
+      try {
+        return updateAffectedOrders(account, orderSnapshot, progress);
       }
+      finally {
+        progress.finished();
+      }
+    }
+  }
+
+  private static int updateAffectedOrders(Account account, OrderSnapshot orderSnapshot,
+      UpdateProgressTracker progress) {
+    SellOrders sellOrders = getOwnSellOrders(account);
+    int visibleSyndicateMask = account.getVisibleSyndicateMask();
+    OrderUpdatePipeline pipeline = new OrderUpdatePipeline(account, visibleSyndicateMask, sellOrders, progress);
+    int updatedOrders = resumeIncompleteUpdates(account, pipeline, sellOrders);
+
+    int[] ordersToEvaluate = orderSnapshot.getOrdersToEvaluate(sellOrders, visibleSyndicateMask);
+    BitSet evaluatedUpdatedOrders = pipeline.run(ordersToEvaluate);
+    orderSnapshot.sync(sellOrders, pipeline.getEvaluatedSyndicateMasks(), evaluatedUpdatedOrders,
+        pipeline.getDroppedOrders(), visibleSyndicateMask);
+
+    return updatedOrders + evaluatedUpdatedOrders.cardinality();
+  }
 
-      String orderId = currentOrder.getString("id");
-      //used to build JSON String
-      JSONObject jsonObject = new JSONObject();
-      jsonObject.put("order_id", orderId);
-      jsonObject.put("platinum", currentOrder.getFloat("platinum"));
-      jsonObject.put("quantity", currentOrder.getInt("quantity"));
-      //for the update simply invert the current visibility boolean from the order
-      jsonObject.put("visible", !(currentOrder.getBoolean("visible")));
-      if(currentOrder.has("mod_rank")) {
-        jsonObject.put("mod_rank", currentOrder.getInt("mod_rank"));
+  /**
+   * Decides which of the passed orders have to be updated and to which visibility.
+   * Makes no requests; all required item info has to be contained in the passed SyndicateIndex.
+   * @param sellOrders the SellOrders that the orders to evaluate belong to
+   * @param orders the indexes of the orders to evaluate
+   * @param syndicateIndex the SyndicateIndex containing the Syndicate drop sources for the items of the orders
+   * @param visibleSyndicateMask an int mask of all Syndicates that are set as visible
+   * @param evaluatedSyndicateMasks an int array that the Syndicate mask of every evaluated order is put into
+   * by order index
+   * @return a Map containing the visibility that every order which has to be updated should be updated to by order ID
+   */
+  static Map<String, Boolean> planUpdates(SellOrders sellOrders, int[] orders, SyndicateIndex syndicateIndex,
+      int visibleSyndicateMask, int[] evaluatedSyndicateMasks) {
+    Map<String, Boolean> plannedVisibilities = new LinkedHashMap<>();
+    for(int currentOrder : orders) {
+      int syndicateMask = syndicateIndex.getSyndicateMask(sellOrders.getItemUrlName(currentOrder));
+      evaluatedSyndicateMasks[currentOrder] = syndicateMask;
+      if(isUpdateCandidate(sellOrders.isVisible(currentOrder), syndicateMask, visibleSyndicateMask)) {
+        //for the update simply invert the current visibility boolean from the order
+        plannedVisibilities.put(sellOrders.getId(currentOrder), !sellOrders.isVisible(currentOrder));
       }
+    }
+    return plannedVisibilities;
+  }
 
-      String updateOrderRequestBody = jsonObject.toString();
-      APIRequestManager.updateOrder(orderId, updateOrderRequestBody);
-      updatedOrders++;
+  /**
+   * Finishes the updates from the journal that a previous run planned but could not complete.
+   * Orders that no longer exist or already have their planned visibility are skipped and closed in the journal
+   * right away, so that a stale entry can never revert a later change and the journal can be removed.
+   * The passed orders are changed to reflect the completed updates.
+   * @param account the Account whose incomplete updates should be finished
+   * @param pipeline the OrderUpdatePipeline of the account that the orders belong to
+   * @param sellOrders the current sell orders of the account
+   * @return an int containing the number of orders that have been updated
+   */
+  private static int resumeIncompleteUpdates(Account account, OrderUpdatePipeline pipeline,
+      SellOrders sellOrders) {
+    Map<String, Boolean> incompleteUpdates = UpdateJournal.getIncompleteUpdates(account.getName());
+    Map<String, Boolean> resumedVisibilities = new LinkedHashMap<>();
+    List<String> skippedOrderIds = new ArrayList<>();
+    for(Map.Entry<String, Boolean> entry : incompleteUpdates.entrySet()) {
+      int order = sellOrders.indexOf(entry.getKey());
+      if(order >= 0 && sellOrders.isVisible(order) != entry.getValue()) {
+        resumedVisibilities.put(entry.getKey(), entry.getValue());
+      }
+      else {
+        skippedOrderIds.add(entry.getKey());
+      }
+    }
+    UpdateJournal.recordCompleted(skippedOrderIds);
+
+    BitSet resumedOrders = pipeline.resume(resumedVisibilities);
+    for(int order = resumedOrders.nextSetBit(0); order >= 0; order = resumedOrders.nextSetBit(order + 1)) {
+      sellOrders.setVisible(order, resumedVisibilities.get(sellOrders.getId(order)));
+    }
+    return resumedOrders.cardinality();
+  }
+
+  /**
+   * Builds the Syndicate index for all items of the sell orders on the Warframe Market profile of an account
+   * without updating any orders, so that a following update finds all item info cached.
+   * @param account the Account whose orders should be indexed
+   * @return the built SyndicateIndex
+   * @throws UncheckedIOException if the orders or item info could not be requested
+   */
+  public static SyndicateIndex indexOwnSellOrders(Account account) {
+    SellOrders sellOrders = getOwnSellOrders(account);
+    List<String> urlNames = new ArrayList<>(sellOrders.getDistinctItems());
+    for(int item = 0; item < sellOrders.getDistinctItems(); item++) {
+      urlNames.add(sellOrders.getDistinctItemUrlName(item));
     }
+    return SyndicateIndex.build(account, urlNames);
+  }
 
-    return updatedOrders;
+  /**
+   * Requests all orders from the Warframe Market profile of an account and extracts the sell orders.
+   * @param account the Account whose orders are requested
+   * @return the SellOrders of the account
+   */
+  private static SellOrders getOwnSellOrders(Account account) {
+    //the response is parsed while it is received instead of being buffered as a String first
+    return APIRequestManager.getAllOrdersFromOwnProfile(account, SellOrders::parse);
   }
 
   /**
    * Determines whether an item order should have its visibility updated on Warframe Market.
-   * @param order a JSONObject containing the order to be checked
+   * @param currentOrderVisibility the current visibility of the order to be checked
+   * @param syndicateMask an int mask of the Syndicates that the order's item can be acquired from
+   * @param visibleSyndicateMask an int mask of all Syndicates that are set as visible
    * @return a boolean stating whether the order is an update candidate (true) or not (false)
    */
-  private static boolean isUpdateCandidate(JSONObject order) {
-    List<String> syndicateDropSources = itemDropsFromSyndicates(order);
+  private static boolean isUpdateCandidate(boolean currentOrderVisibility, int syndicateMask,
+      int visibleSyndicateMask) {
     //early return when item from order is not available from a Syndicate in the first place
-    if(syndicateDropSources.isEmpty()) {
+    if(syndicateMask == 0) {
       return false;
     }
 
-    boolean currentOrderVisibility = order.getBoolean("visible");
-    boolean desiredOrderVisibility = getTotalVisibility(syndicateDropSources);
+    boolean desiredOrderVisibility = getTotalVisibility(syndicateMask, visibleSyndicateMask);
 
     //if both visibility values do not match, the order is an update candidate (true)
     return currentOrderVisibility != desiredOrderVisibility;
   }
 
   /**
-   * Takes a JSONObject with an item order and determines which Syndicates, if any, provide the item.
-   * @param order a JSONObject containing the item order for which the syndicate drop sources should be determined
-   * @return a List of Strings naming all Syndicate drop sources for the item; empty if it doesn't have any
+   * Takes the details for an item and determines which Syndicates, if any, provide the item.
+   * @param itemDetails the ItemDetails of the item for which the syndicate drop sources should be determined
+   * @return an int mask of all Syndicate drop sources for the item; 0 if it doesn't have any
    */
-  private static List<String> itemDropsFromSyndicates(JSONObject order) {
-    String itemUrlName = order.getJSONObject("item").getString("url_name");
-    String jsonItemDetails = APIRequestManager.getItemInfo(itemUrlName);
-
-    JSONArray itemDropSources = getItemDropSources(jsonItemDetails);
-    List<String> syndicateDropSources = new ArrayList<>();
-    for(int i = 0; i < itemDropSources.length(); i++) {
-      String currentDropSource = itemDropSources.getJSONObject(i).getString("name");
-      String currentSyndicate = stringIsSyndicate(currentDropSource);
-      if(currentSyndicate != null) {
-        syndicateDropSources.add(currentSyndicate);
-      }
-    }
-
-    return syndicateDropSources;
+  static int itemDropsFromSyndicates(ItemDetails itemDetails) {
+    return itemDropsFromSyndicates(itemDetails.getDropNames());
   }
 
   /**
-   * Takes a JSON String with the full details for an item and returns that item's drop sources in a JSONArray.
-   * @param jsonItemDetails a JSON String containing the item details from which the drop source info is extracted
-   * @return a JSONArray containing all drop sources
+   * Determines which Syndicates, if any, are among the drop sources of an item.
+   * @param dropNames a List of Strings containing the English names of all drop sources of the item
+   * @return an int mask of all Syndicate drop sources for the item; 0 if it doesn't have any
    */
-  private static JSONArray getItemDropSources(String jsonItemDetails) {
-    //id used for locating requested item within items_in_set array
-    String itemId = new JSONObject(jsonItemDetails)
-        .getJSONObject("payload").getJSONObject("item").getString("id");
-    //array with all items that share a set with the requested item
-    JSONArray itemsInSetArray = new JSONObject(jsonItemDetails)
-        .getJSONObject("payload").getJSONObject("item").getJSONArray("items_in_set");
-    //array containing all drop sources for the requested item
-    JSONArray itemDropSources = null;
-
-    //if only 1 element is in the array it automatically is the requested item
-    if(itemsInSetArray.length() == 1) {
-      itemDropSources = itemsInSetArray.getJSONObject(0)
-          .getJSONObject("en").getJSONArray("drop");
-    }
-    else {
-      //locate requested item in array
-      for(int i = 0; i < itemsInSetArray.length(); i++) {
-        String currentItemId = itemsInSetArray.getJSONObject(i).getString("id");
-        if(currentItemId.equals(itemId)) {
-          itemDropSources = itemsInSetArray.getJSONObject(i)
-              .getJSONObject("en").getJSONArray("drop");
-        }
+  static int itemDropsFromSyndicates(List<String> dropNames) {
+    int syndicateMask = 0;
+    for(String currentDropSource : dropNames) {
+      Syndicate currentSyndicate = Syndicate.matchDropSource(currentDropSource);
+      if(currentSyndicate != null) {
+        syndicateMask |= currentSyndicate.getMask();
       }
     }
 
-    return itemDropSources;
+    return syndicateMask;
   }
 
   /**
-   * Checks if a given String contains any of the Strings from a constant member and if so
-   * returns that member. Otherwise, if there is no match, it returns null.
-   * @param inputStr the String for which shall be checked if it matches any of the list items
-   * @return a String containing the matched Syndicate String constant; null if no match could be found
-   */
-  private static String stringIsSyndicate(String inputStr) {
-    for(int i = 0; i < SYNDICATE_SOURCES.length; i++) {
-      if(inputStr.contains(SYNDICATE_SOURCES[i])) {
-        return SYNDICATE_SOURCES[i];
-      }
-    }
-    return null;
-  }
-
-  /**
-   * Takes a List of Strings describing Syndicate drop sources and determines
-   * based on the visibilities of these Syndicates in the program whether an item order
-   * with these Syndicate drop sources should be visible or invisible.
+   * Determines based on the visibilities of an item's Syndicate drop sources in the program
+   * whether an item order with these Syndicate drop sources should be visible or invisible.
    * Decision criteria: if one ore multiple Syndicates from the drop sources are set as visible,
    * then a corresponding order should be visible;
    * if all involved Syndicates are invisible, the order should be invisible.
-   * @param syndicateDropSources
+   * @param syndicateMask an int mask of the Syndicate drop sources
+   * @param visibleSyndicateMask an int mask of all Syndicates that are set as visible
    * @return a boolean expression whether a corresponding order should be visible; true = 'visible', false = 'invisible'
    */
-  private static boolean getTotalVisibility(List<String> syndicateDropSources) {
-    for(String sds : syndicateDropSources) {
-      boolean currentVisibility = false;
-      switch(sds) {
-        case "New Loka":
-          currentVisibility = PropertyManager.getVisibleNewLoka();
-          break;
-        case "Perrin Sequence":
-          currentVisibility = PropertyManager.getVisibleThePerrinSequence();
-          break;
-        case "Red Veil":
-          currentVisibility = PropertyManager.getVisibleRedVeil();
-          break;
-        case "Steel Meridian":
-          currentVisibility = PropertyManager.getVisibleSteelMeridian();
-          break;
-        case "Cephalon Suda":
-          currentVisibility = PropertyManager.getVisibleCephalonSuda();
-          break;
-        case "Arbiters of Hexis":
-          currentVisibility = PropertyManager.getVisibleArbitersOfHexis();
-          break;
-      }
-      if(currentVisibility) {
-        return true;
-      }
-    }
-    return false;
+  static boolean getTotalVisibility(int syndicateMask, int visibleSyndicateMask) {
+    return (syndicateMask & visibleSyndicateMask) != 0;
   }
 }
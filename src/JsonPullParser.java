@@ -0,0 +1,445 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser that reads JSON text from a Reader one token at a time, without building
+ * a tree of the whole document. Values that are of no interest can be skipped without
+ * allocating anything for them, which keeps the cost of extracting a few fields from a large
+ * response close to the cost of reading it once.
+ * The parser expects well-formed JSON, as returned by the Warframe Market API, and does not
+ * validate separators between values.
+ */
+public class JsonPullParser {
+  public enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+  }
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int pos = 0;
+  private int limit = 0;
+  //reused for building all Strings and numbers that are read
+  private final StringBuilder valueBuilder = new StringBuilder();
+  //names that have been read before by hash, so that repeated names of large arrays of objects aren't copied again
+  private final String[] nameCache = new String[256];
+
+  //for every open container whether it is an object (true) or an array (false)
+  private boolean[] containerIsObject = new boolean[32];
+  private int depth = 0;
+  //whether the next String within the innermost object is a name rather than a value
+  private boolean expectName = false;
+  private Token peeked = null;
+
+  public JsonPullParser(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Determines the type of the next token without consuming it.
+   * @return the Token type of the next token
+   * @throws IOException if reading fails or the JSON text is malformed
+   */
+  public Token peek() throws IOException {
+    if(peeked != null) {
+      return peeked;
+    }
+    int c = nextSignificantChar();
+    switch(c) {
+      case -1:
+        peeked = Token.END_DOCUMENT;
+        break;
+      case '{':
+        peeked = Token.BEGIN_OBJECT;
+        break;
+      case '}':
+        peeked = Token.END_OBJECT;
+        break;
+      case '[':
+        peeked = Token.BEGIN_ARRAY;
+        break;
+      case ']':
+        peeked = Token.END_ARRAY;
+        break;
+      case '"':
+        peeked = (depth > 0 && containerIsObject[depth - 1] && expectName) ? Token.NAME : Token.STRING;
+        break;
+      case 't':
+      case 'f':
+        peeked = Token.BOOLEAN;
+        break;
+      case 'n':
+        peeked = Token.NULL;
+        break;
+      default:
+        if(c == '-' || (c >= '0' && c <= '9')) {
+          peeked = Token.NUMBER;
+        }
+        else {
+          throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+    return peeked;
+  }
+
+  /**
+   * @return whether the current object or array has another element
+   * @throws IOException if reading fails or the JSON text is malformed
+   */
+  public boolean hasNext() throws IOException {
+    Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  public void beginObject() throws IOException {
+    expect(Token.BEGIN_OBJECT);
+    pos++;
+    push(true);
+  }
+
+  public void endObject() throws IOException {
+    expect(Token.END_OBJECT);
+    pos++;
+    pop();
+  }
+
+  public void beginArray() throws IOException {
+    expect(Token.BEGIN_ARRAY);
+    pos++;
+    push(false);
+  }
+
+  public void endArray() throws IOException {
+    expect(Token.END_ARRAY);
+    pos++;
+    pop();
+  }
+
+  /**
+   * Consumes the name of the next property within the current object.
+   * @return a String containing the property name
+   * @throws IOException if reading fails or the next token is not a name
+   */
+  public String nextName() throws IOException {
+    expect(Token.NAME);
+    pos++;
+    readChars();
+    expectName = false;
+    return toCachedName();
+  }
+
+  /**
+   * Consumes the next value, which has to be a String.
+   * @return the String value
+   * @throws IOException if reading fails or the next token is not a String
+   */
+  public String nextString() throws IOException {
+    expect(Token.STRING);
+    pos++;
+    String value = readString();
+    valueConsumed();
+    return value;
+  }
+
+  /**
+   * Consumes the next value, which has to be a String or null.
+   * @return the String value; null if the value is null
+   * @throws IOException if reading fails or the next token is neither a String nor null
+   */
+  public String nextStringOrNull() throws IOException {
+    if(peek() == Token.NULL) {
+      nextNull();
+      return null;
+    }
+    return nextString();
+  }
+
+  public boolean nextBoolean() throws IOException {
+    expect(Token.BOOLEAN);
+    boolean value = buffer[pos] == 't';
+    skipLiteral(value ? "true" : "false");
+    valueConsumed();
+    return value;
+  }
+
+  public void nextNull() throws IOException {
+    expect(Token.NULL);
+    skipLiteral("null");
+    valueConsumed();
+  }
+
+  public double nextDouble() throws IOException {
+    return Double.parseDouble(readNumber());
+  }
+
+  public int nextInt() throws IOException {
+    String number = readNumber();
+    try {
+      return Integer.parseInt(number);
+    }
+    catch (NumberFormatException e) {
+      return (int) Double.parseDouble(number);
+    }
+  }
+
+  /**
+   * Skips the next value including all values nested within it, without allocating any of them.
+   * If the next token is a property name, the name and its value are skipped.
+   * @throws IOException if reading fails or the JSON text is malformed
+   */
+  public void skipValue() throws IOException {
+    if(peek() == Token.NAME) {
+      skipName();
+    }
+    int startDepth = depth;
+    do {
+      switch(peek()) {
+        case BEGIN_OBJECT:
+          beginObject();
+          break;
+        case BEGIN_ARRAY:
+          beginArray();
+          break;
+        case END_OBJECT:
+          endObject();
+          break;
+        case END_ARRAY:
+          endArray();
+          break;
+        case NAME:
+          skipName();
+          break;
+        case STRING:
+          pos++;
+          skipString();
+          valueConsumed();
+          break;
+        case NUMBER:
+          skipNumber();
+          valueConsumed();
+          break;
+        case BOOLEAN:
+          nextBoolean();
+          break;
+        case NULL:
+          nextNull();
+          break;
+        case END_DOCUMENT:
+          throw syntaxError("Unexpected end of document");
+      }
+    } while(depth > startDepth);
+  }
+
+  private void skipName() throws IOException {
+    pos++;
+    skipString();
+    expectName = false;
+    peeked = null;
+  }
+
+  /**
+   * Moves the read position to the next character that is not whitespace or a separator.
+   * @return the next significant character; -1 at the end of the input
+   */
+  private int nextSignificantChar() throws IOException {
+    while(pos < limit || fill()) {
+      char c = buffer[pos];
+      if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',' || c == ':') {
+        pos++;
+        continue;
+      }
+      return c;
+    }
+    return -1;
+  }
+
+  /**
+   * Refills the buffer from the reader.
+   * @return whether at least one more character is available
+   */
+  private boolean fill() throws IOException {
+    pos = 0;
+    limit = 0;
+    int read;
+    while((read = reader.read(buffer, 0, buffer.length)) == 0) {
+      //a Reader may return 0 without having reached the end
+    }
+    if(read < 0) {
+      return false;
+    }
+    limit = read;
+    return true;
+  }
+
+  private char readChar() throws IOException {
+    if(pos == limit && !fill()) {
+      throw syntaxError("Unexpected end of document");
+    }
+    return buffer[pos++];
+  }
+
+  /**
+   * Reads a String whose opening quote has already been consumed, including the closing quote.
+   */
+  private String readString() throws IOException {
+    readChars();
+    return valueBuilder.toString();
+  }
+
+  /**
+   * Reads a String whose opening quote has already been consumed, including the closing quote,
+   * into the valueBuilder.
+   */
+  private void readChars() throws IOException {
+    valueBuilder.setLength(0);
+    while(true) {
+      //copy unescaped runs from the buffer in bulk
+      int start = pos;
+      while(pos < limit) {
+        char c = buffer[pos];
+        if(c == '"') {
+          valueBuilder.append(buffer, start, pos - start);
+          pos++;
+          peeked = null;
+          return;
+        }
+        if(c == '\\') {
+          break;
+        }
+        pos++;
+      }
+      valueBuilder.append(buffer, start, pos - start);
+      if(pos < limit) {
+        pos++;
+        valueBuilder.append(readEscapedChar());
+      }
+      else if(!fill()) {
+        throw syntaxError("Unterminated string");
+      }
+    }
+  }
+
+  /**
+   * @return the name within the valueBuilder as a String, reusing the String of an equal name read before
+   */
+  private String toCachedName() {
+    int hash = 0;
+    for(int i = 0; i < valueBuilder.length(); i++) {
+      hash = 31 * hash + valueBuilder.charAt(i);
+    }
+    int slot = (hash ^ (hash >>> 8)) & (nameCache.length - 1);
+    String cachedName = nameCache[slot];
+    if(cachedName != null && cachedName.contentEquals(valueBuilder)) {
+      return cachedName;
+    }
+    String name = valueBuilder.toString();
+    nameCache[slot] = name;
+    return name;
+  }
+
+  /**
+   * Skips a String whose opening quote has already been consumed, including the closing quote.
+   */
+  private void skipString() throws IOException {
+    while(true) {
+      char c = readChar();
+      if(c == '"') {
+        return;
+      }
+      if(c == '\\') {
+        readChar();
+      }
+    }
+  }
+
+  private char readEscapedChar() throws IOException {
+    char c = readChar();
+    switch(c) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int codePoint = 0;
+        for(int i = 0; i < 4; i++) {
+          codePoint = (codePoint << 4) + Character.digit(readChar(), 16);
+        }
+        return (char) codePoint;
+      default:
+        //covers '"', '\\' and '/'
+        return c;
+    }
+  }
+
+  private String readNumber() throws IOException {
+    expect(Token.NUMBER);
+    valueBuilder.setLength(0);
+    while(pos < limit || fill()) {
+      char c = buffer[pos];
+      if(!isNumberChar(c)) {
+        break;
+      }
+      valueBuilder.append(c);
+      pos++;
+    }
+    valueConsumed();
+    return valueBuilder.toString();
+  }
+
+  private void skipNumber() throws IOException {
+    while((pos < limit || fill()) && isNumberChar(buffer[pos])) {
+      pos++;
+    }
+  }
+
+  private static boolean isNumberChar(char c) {
+    return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+  }
+
+  private void skipLiteral(String literal) throws IOException {
+    for(int i = 0; i < literal.length(); i++) {
+      if(readChar() != literal.charAt(i)) {
+        throw syntaxError("Expected literal " + literal);
+      }
+    }
+  }
+
+  private void expect(Token token) throws IOException {
+    if(peek() != token) {
+      throw syntaxError("Expected " + token + " but was " + peeked);
+    }
+  }
+
+  private void push(boolean isObject) {
+    if(depth == containerIsObject.length) {
+      boolean[] grown = new boolean[depth * 2];
+      System.arraycopy(containerIsObject, 0, grown, 0, depth);
+      containerIsObject = grown;
+    }
+    containerIsObject[depth++] = isObject;
+    expectName = isObject;
+    peeked = null;
+  }
+
+  private void pop() {
+    depth--;
+    valueConsumed();
+  }
+
+  /**
+   * Marks the current value as complete, so that within an object a name has to follow next.
+   */
+  private void valueConsumed() {
+    expectName = depth > 0 && containerIsObject[depth - 1];
+    peeked = null;
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException("Malformed JSON: " + message);
+  }
+}
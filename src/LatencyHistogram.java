@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of latencies with logarithmic buckets that are each split into linear sub-buckets,
+ * similar to an HDR histogram. Recorded values keep a relative precision of about 6% over the whole
+ * range from microseconds to hours, while recording is a single atomic increment without allocation.
+ */
+public class LatencyHistogram {
+  //every power of 2 is split into 2^SUB_BUCKET_BITS linear sub-buckets
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  //values are recorded in microseconds, which fit into 40 bits for more than 12 days
+  private static final int MAGNITUDES = 40;
+
+  private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKET_COUNT);
+
+  /**
+   * Records a single latency.
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    counts.incrementAndGet(bucketIndex(Math.max(0, nanos / 1000)));
+  }
+
+  public long getCount() {
+    long count = 0;
+    for(int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Determines the latency below which the passed percentage of all recorded latencies lies.
+   * @param percentile the percentage between 0 and 100
+   * @return a long containing the latency in nanoseconds; 0 if nothing has been recorded
+   */
+  public long getPercentile(double percentile) {
+    long count = getCount();
+    if(count == 0) {
+      return 0;
+    }
+    long targetCount = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    long seenCount = 0;
+    for(int i = 0; i < counts.length(); i++) {
+      seenCount += counts.get(i);
+      if(seenCount >= targetCount) {
+        return bucketUpperBound(i) * 1000;
+      }
+    }
+    return bucketUpperBound(counts.length() - 1) * 1000;
+  }
+
+  /**
+   * Maps a value to its bucket: values below SUB_BUCKET_COUNT map directly, larger values map to the
+   * sub-bucket given by the SUB_BUCKET_BITS bits following their highest set bit.
+   */
+  private static int bucketIndex(long micros) {
+    if(micros < SUB_BUCKET_COUNT) {
+      return (int) micros;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+    int subBucket = (int) (micros >>> (magnitude - 1)) & (SUB_BUCKET_COUNT - 1);
+    return Math.min(magnitude * SUB_BUCKET_COUNT + subBucket, MAGNITUDES * SUB_BUCKET_COUNT - 1);
+  }
+
+  /**
+   * @return the largest value in microseconds that maps to the passed bucket
+   */
+  private static long bucketUpperBound(int index) {
+    int magnitude = index / SUB_BUCKET_COUNT;
+    int subBucket = index % SUB_BUCKET_COUNT;
+    if(magnitude == 0) {
+      return subBucket;
+    }
+    long lowerBound = ((long) (SUB_BUCKET_COUNT | subBucket)) << (magnitude - 1);
+    return lowerBound + (1L << (magnitude - 1)) - 1;
+  }
+}
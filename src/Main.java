@@ -7,13 +7,32 @@ public class Main {
   private static class SaveConfiguration extends Thread{
     public void run() {
       PropertyManager.storeProperties();
+      ItemCache.store();
     }
   }
 
   public static void main(String[] args) {
+    if(args.length > 0 && !args[0].equals("daemon")) {
+      //a single command initializes only what it needs itself, so that it starts as fast as possible
+      System.exit(CommandLineController.run(args));
+    }
     init();
     Runtime.getRuntime().addShutdownHook(new SaveConfiguration());
-    MenuController.menuLoop();
+    ControlServer.start();
+    try {
+      if(args.length > 0 && args[0].equals("daemon")) {
+        DaemonController.updateLoop();
+      }
+      else {
+        //the items are looked up while the user is still deciding what to do
+        PrefetchWarmer.start();
+        MenuController.menuLoop();
+      }
+    }
+    finally {
+      //the control API would otherwise keep the program running without a console, however the loop ended
+      ControlServer.stop();
+    }
   }
 
   /**
@@ -22,5 +41,7 @@ public class Main {
   public static void init() {
     PropertyManager.init();
     APIRequestManager.init();
+    APIRequestManager.warmUpConnection();
+    ItemCache.init();
   }
 }
@@ -1,9 +1,17 @@
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Takes care of all user console input to navigate menus.
+ * Settings apply to the selected account, while updates cover all accounts.
  */
 public class MenuController {
+  //the account that settings made by the user apply to
+  private static Account selectedAccount;
 
   /**
    * Starts the menu loop for user inputs. Exits loop if user inputs 'exit'.
@@ -27,6 +35,9 @@ public class MenuController {
         case "update":
           updateSiteOrderStatus();
           break;
+        case "index":
+          indexSiteOrderItems();
+          break;
         case "status":
           printCurrentSyndicateStatus();
           break;
@@ -36,7 +47,12 @@ public class MenuController {
         case "jwt":
           setJWT(inputSplit[1]);
           break;
+        case "account":
+          manageAccounts(inputSplit);
+          break;
         case "exit":
+          PrefetchWarmer.cancel();
+          ControlServer.stop();
           break;
         default:
           System.out.println("Invalid input, try again.");
@@ -47,14 +63,17 @@ public class MenuController {
   /**
    * Prints a help message to console that lists and explains all user commands.
    */
-  private static void printHelp() {
+  static void printHelp() {
     System.out.println("User options:\n"
         + "'help' - prints this user options info\n"
-        + "'syndicate [loka/perrin/veil/meridian/suda/arbiters] [visible/invisible]' - sets new visibility status for syndicate\n"
+        + "'syndicate [" + getSyndicateCommandNames() + "] [visible/invisible]' - sets new visibility status for syndicate\n"
         + "'update' - updates status of orders on Warframe Market according to syndicate visibilities\n"
+        + "'index' - looks up and caches which Syndicates offer the items of your orders, without updating any orders\n"
         + "'status' - prints current stored username and visibility setting for all syndicates\n"
         + "'username <username>' - set username of your Warframe Market profile so that it can be found by the application\n"
         + "'jwt <jwt>' - set the JSON Web Token that will be used for authenticated requests to Warframe Market\n"
+        + "'account' - lists all accounts; settings apply to the selected account, updates to all of them\n"
+        + "'account [add/remove/select] <name>' - adds, removes or selects an account for another Warframe Market profile\n"
         + "'exit' - close this program"
     );
   }
@@ -63,40 +82,107 @@ public class MenuController {
    * Calls for an update of a Syndicate's visibility in this program.
    * @param syndicate a String containing the Syndicate name for which the visibility should be updated in the program
    * @param visibility a String containing the new visibility for the Syndicate
+   * @return whether the visibility has been updated; false if an argument is invalid
    */
-  private static void setSyndicateVisibility(String syndicate, String visibility) {
+  static boolean setSyndicateVisibility(String syndicate, String visibility) {
     boolean visible;
     try {
       visible = visibilityStringToBoolean(visibility);
     }
     catch (IllegalArgumentException e) {
       System.out.println(e.getMessage());
-      return;
+      return false;
     }
 
-    switch (syndicate) {
-      case "loka":
-        PropertyManager.setVisibleNewLoka(visible);
-        break;
-      case "perrin":
-        PropertyManager.setVisibleThePerrinSequence(visible);
-        break;
-      case "veil":
-        PropertyManager.setVisibleRedVeil(visible);
-        break;
-      case "meridian":
-        PropertyManager.setVisibleSteelMeridian(visible);
+    Syndicate matchedSyndicate = Syndicate.fromCommandName(syndicate);
+    if(matchedSyndicate == null) {
+      System.out.println("Invalid argument for Syndicate");
+      return false;
+    }
+    getSelectedAccount().setVisible(matchedSyndicate, visible);
+    return true;
+  }
+
+  /**
+   * @return the account that settings made by the user apply to; the default account unless another was selected
+   */
+  static Account getSelectedAccount() {
+    if(selectedAccount == null || PropertyManager.getAccount(selectedAccount.getName()) != selectedAccount) {
+      selectedAccount = PropertyManager.getDefaultAccount();
+    }
+    return selectedAccount;
+  }
+
+  /**
+   * Selects the account that following settings apply to.
+   * @param name a String containing the name of the account
+   * @return whether the account has been selected; false if there is no account with that name
+   */
+  static boolean selectAccount(String name) {
+    Account account = PropertyManager.getAccount(name);
+    if(account == null) {
+      System.out.println("There is no account '" + name + "'");
+      return false;
+    }
+    selectedAccount = account;
+    return true;
+  }
+
+  /**
+   * Handles the 'account' command: lists, adds, removes or selects accounts.
+   * @param inputSplit the words of the user input, starting with 'account'
+   */
+  private static void manageAccounts(String[] inputSplit) {
+    if(inputSplit.length == 1) {
+      StringBuilder accounts = new StringBuilder("Accounts:");
+      for(Account account : PropertyManager.getAccounts()) {
+        accounts.append("\n").append(account == getSelectedAccount() ? "* " : "  ").append(account.getName())
+            .append(" (").append(account.getUserName()).append(")");
+      }
+      System.out.println(accounts);
+      return;
+    }
+    if(inputSplit.length != 3) {
+      System.out.println("Invalid input, try again.");
+      return;
+    }
+    String name = inputSplit[2];
+    switch(inputSplit[1]) {
+      case "add":
+        Account account = PropertyManager.addAccount(name);
+        if(account == null) {
+          System.out.println("Invalid or already existing account name");
+        }
+        else {
+          selectedAccount = account;
+          System.out.println("Added and selected account '" + name + "', set its username and JWT next.");
+        }
         break;
-      case "suda":
-        PropertyManager.setVisibleCephalonSuda(visible);
+      case "remove":
+        if(!PropertyManager.removeAccount(name)) {
+          System.out.println("There is no account '" + name + "' that can be removed");
+        }
         break;
-      case "arbiters":
-        PropertyManager.setVisibleArbitersOfHexis(visible);
+      case "select":
+        selectAccount(name);
         break;
       default:
-        System.out.println("Invalid argument for Syndicate");
-        break;
+        System.out.println("Invalid input, try again.");
+    }
+  }
+
+  /**
+   * @return a String listing the command names of all Syndicates, separated by '/'
+   */
+  static String getSyndicateCommandNames() {
+    StringBuilder commandNames = new StringBuilder();
+    for(Syndicate syndicate : Syndicate.values()) {
+      if(commandNames.length() > 0) {
+        commandNames.append('/');
+      }
+      commandNames.append(syndicate.getCommandName());
     }
+    return commandNames.toString();
   }
 
   /**
@@ -105,7 +191,7 @@ public class MenuController {
    * @return a boolean expressing visibility; true = 'visible', false = 'invisible'
    * @throws IllegalArgumentException if passed visibility argument is invalid
    */
-  private static boolean visibilityStringToBoolean(String visibility) throws IllegalArgumentException {
+  static boolean visibilityStringToBoolean(String visibility) throws IllegalArgumentException {
     switch (visibility) {
       case "visible":
         return true;
@@ -118,31 +204,83 @@ public class MenuController {
 
   /**
    * Calls for the update of all sell orders on Warframe Market that require it, based on the
-   * current settings for Syndicate visibility in the program.
+   * current settings for Syndicate visibility in the program. All accounts are updated at the same time.
    * Also tells the user how many orders have been updated.
+   * @return whether the update could be made for all accounts; false if Warframe Market could not be reached
    */
-  private static void updateSiteOrderStatus() {
+  static boolean updateSiteOrderStatus() {
     System.out.println("Updating sell orders on Warframe Market.\n"
         + "This may take a couple minutes...");
-    int updatedOrders = JSONProcessor.updateAffectedOrders();
-    if(updatedOrders > 0) {
-      System.out.println("Updated " + updatedOrders + " orders.");
-    } else {
-      System.out.println("No orders were updated.");
+    ApiMetrics.reset();
+    boolean success = true;
+    List<Account> accounts = PropertyManager.getAccounts();
+    //the name is only of interest once there is more than one account
+    boolean printAccountNames = accounts.size() > 1;
+    Map<Account, CompletableFuture<Integer>> pendingUpdates =
+        JSONProcessor.updateAffectedOrders(accounts, new ConsoleProgressListener(printAccountNames));
+    for(Map.Entry<Account, CompletableFuture<Integer>> entry : pendingUpdates.entrySet()) {
+      String prefix = printAccountNames ? entry.getKey().getName() + ": " : "";
+      int updatedOrders;
+      try {
+        updatedOrders = entry.getValue().join();
+      }
+      catch (CompletionException e) {
+        Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+        System.out.println(prefix + "Could not reach Warframe Market, no orders were updated: " + cause);
+        success = false;
+        continue;
+      }
+      if(updatedOrders > 0) {
+        System.out.println(prefix + "Updated " + updatedOrders + " orders.");
+      } else {
+        System.out.println(prefix + "No orders were updated.");
+      }
+    }
+    System.out.println(ApiMetrics.getSummary());
+    ApiMetrics.appendToMetricsFile();
+    return success;
+  }
+
+  /**
+   * Calls for the Syndicate index to be built for the items of all sell orders on Warframe Market,
+   * one account after another, since the item info is shared by all accounts.
+   * Also tells the user how many items were indexed and how many of them had to be requested.
+   * @return whether the index could be built for all accounts; false if Warframe Market could not be reached
+   */
+  static boolean indexSiteOrderItems() {
+    System.out.println("Indexing items of sell orders on Warframe Market.\n"
+        + "This may take a couple minutes...");
+    List<Account> accounts = PropertyManager.getAccounts();
+    for(Account account : accounts) {
+      SyndicateIndex syndicateIndex;
+      try {
+        syndicateIndex = JSONProcessor.indexOwnSellOrders(account);
+      }
+      catch (UncheckedIOException e) {
+        System.out.println("Could not reach Warframe Market: " + e.getCause());
+        return false;
+      }
+      System.out.println((accounts.size() > 1 ? account.getName() + ": " : "") + "Indexed " + syndicateIndex.size()
+          + " items, " + syndicateIndex.getRequestedItems() + " of which had to be requested.");
     }
+    return true;
   }
 
   /**
-   * Prints the current visibility status within this program for all Syndicates.
+   * Prints the current visibility status within this program for all Syndicates of the selected account.
    */
-  private static void printCurrentSyndicateStatus() {
-    System.out.println("Current visibility status within program for all Synicates:"
-        + "\nNew Loka: " + visibilityBooleanToString(PropertyManager.getVisibleNewLoka())
-        + "\nThe Perrin Sequence: " + visibilityBooleanToString(PropertyManager.getVisibleThePerrinSequence())
-        + "\nRed Veil: " + visibilityBooleanToString(PropertyManager.getVisibleRedVeil())
-        + "\nSteel Meridian: " + visibilityBooleanToString(PropertyManager.getVisibleSteelMeridian())
-        + "\nCephalon Suda: " + visibilityBooleanToString(PropertyManager.getVisibleCephalonSuda())
-        + "\nArbiters of Hexis: " +visibilityBooleanToString(PropertyManager.getVisibleArbitersOfHexis()));
+  static void printCurrentSyndicateStatus() {
+    Account account = getSelectedAccount();
+    StringBuilder status = new StringBuilder("Current visibility status within program for all Synicates");
+    if(PropertyManager.getAccounts().size() > 1) {
+      status.append(" of account '").append(account.getName()).append("'");
+    }
+    status.append(":");
+    for(Syndicate syndicate : Syndicate.values()) {
+      status.append("\n").append(syndicate.getDisplayName()).append(": ")
+          .append(visibilityBooleanToString(account.getVisible(syndicate)));
+    }
+    System.out.println(status);
   }
 
   /**
@@ -163,7 +301,7 @@ public class MenuController {
    * @param userName a String containing the new username
    */
   private static void setUserName(String userName) {
-    PropertyManager.setUserName(userName);
+    getSelectedAccount().setUserName(userName);
   }
 
   /**
@@ -171,6 +309,6 @@ public class MenuController {
    * @param jwt a String containing the new JSON Web Token
    */
   private static void setJWT(String jwt) {
-    PropertyManager.setJWT(jwt);
+    getSelectedAccount().setJWT(jwt);
   }
 }
@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local snapshot of the user's sell orders as of the last update, together with a reverse index
+ * from every Syndicate to the orders whose items it provides.
+ * Allows an update to only evaluate the orders that changed on the profile since the last update
+ * and the orders affected by Syndicates whose visibility changed in the meantime.
+ */
+public class OrderSnapshot {
+  //state of every order as of the last sync by order ID
+  private final Map<String, OrderState> orderStates = new HashMap<>();
+  //reverse index: IDs of all orders whose item can be acquired from a Syndicate, by Syndicate
+  private final Map<Syndicate, Set<String>> orderIdsBySyndicate = new EnumMap<>(Syndicate.class);
+  private final Map<String, Integer> syndicateMasksByOrderId = new HashMap<>();
+  //mask of the Syndicates set as visible that the orders were last synced with
+  private int syncedVisibleSyndicateMask;
+  private boolean synced = false;
+
+  /**
+   * The properties of an order that decide whether it has to be evaluated again.
+   */
+  private static class OrderState {
+    private final String urlName;
+    private final boolean visible;
+
+    private OrderState(String urlName, boolean visible) {
+      this.urlName = urlName;
+      this.visible = visible;
+    }
+  }
+
+  /**
+   * Determines which of the current sell orders have to be evaluated for an update.
+   * These are all orders that are new or have changed since the last sync and all orders
+   * whose item is provided by a Syndicate whose visibility has changed since the last sync.
+   * Before the first sync all orders have to be evaluated.
+   * @param currentSellOrders the SellOrders containing all current sell orders of the user
+   * @param visibleSyndicateMask an int mask of all Syndicates that are currently set as visible
+   * @return an int array containing the indexes of the sell orders that have to be evaluated, in profile order
+   */
+  public int[] getOrdersToEvaluate(SellOrders currentSellOrders, int visibleSyndicateMask) {
+    int[] ordersToEvaluate = new int[currentSellOrders.size()];
+    if(!synced) {
+      Arrays.setAll(ordersToEvaluate, order -> order);
+      return ordersToEvaluate;
+    }
+
+    Set<String> affectedOrderIds = new HashSet<>();
+    for(Syndicate syndicate : Syndicate.fromMask(visibleSyndicateMask ^ syncedVisibleSyndicateMask)) {
+      affectedOrderIds.addAll(orderIdsBySyndicate.getOrDefault(syndicate, Collections.emptySet()));
+    }
+
+    int evaluatedOrders = 0;
+    for(int order = 0; order < currentSellOrders.size(); order++) {
+      String orderId = currentSellOrders.getId(order);
+      if(affectedOrderIds.contains(orderId) || hasChanged(orderId, currentSellOrders, order)) {
+        ordersToEvaluate[evaluatedOrders++] = order;
+      }
+    }
+    return Arrays.copyOf(ordersToEvaluate, evaluatedOrders);
+  }
+
+  /**
+   * Brings the snapshot in line with the state of the profile after an update.
+   * @param currentSellOrders the SellOrders containing all sell orders of the user as fetched before the update
+   * @param evaluatedSyndicateMasks the mask of Syndicate drop sources of every order by order index;
+   * -1 for orders that haven't been evaluated
+   * @param updatedOrders the indexes of all orders whose visibility has been inverted by the update
+   * @param unsyncedOrders the indexes of all orders that are left out of the snapshot, so that the next update
+   * evaluates them again, e.g. because their update could not be sent
+   * @param visibleSyndicateMask an int mask of the Syndicates set as visible that the update was based on
+   */
+  public void sync(SellOrders currentSellOrders, int[] evaluatedSyndicateMasks, BitSet updatedOrders,
+      BitSet unsyncedOrders, int visibleSyndicateMask) {
+    Set<String> currentOrderIds = new HashSet<>();
+    for(int order = 0; order < currentSellOrders.size(); order++) {
+      String orderId = currentSellOrders.getId(order);
+      if(unsyncedOrders.get(order)) {
+        continue;
+      }
+      currentOrderIds.add(orderId);
+      boolean visible = currentSellOrders.isVisible(order) != updatedOrders.get(order);
+      orderStates.put(orderId, new OrderState(currentSellOrders.getItemUrlName(order), visible));
+    }
+
+    //forget orders that no longer exist on the profile or are left out
+    orderStates.keySet().retainAll(currentOrderIds);
+    for(String orderId : new ArrayList<>(syndicateMasksByOrderId.keySet())) {
+      if(!currentOrderIds.contains(orderId)) {
+        removeFromReverseIndex(orderId);
+      }
+    }
+
+    for(int order = 0; order < currentSellOrders.size(); order++) {
+      if(evaluatedSyndicateMasks[order] >= 0) {
+        removeFromReverseIndex(currentSellOrders.getId(order));
+        addToReverseIndex(currentSellOrders.getId(order), evaluatedSyndicateMasks[order]);
+      }
+    }
+
+    syncedVisibleSyndicateMask = visibleSyndicateMask;
+    synced = true;
+  }
+
+  private boolean hasChanged(String orderId, SellOrders sellOrders, int order) {
+    OrderState previousState = orderStates.get(orderId);
+    return previousState == null
+        || previousState.visible != sellOrders.isVisible(order)
+        || !previousState.urlName.equals(sellOrders.getItemUrlName(order));
+  }
+
+  private void addToReverseIndex(String orderId, int syndicateMask) {
+    syndicateMasksByOrderId.put(orderId, syndicateMask);
+    for(Syndicate syndicate : Syndicate.fromMask(syndicateMask)) {
+      orderIdsBySyndicate.computeIfAbsent(syndicate, key -> new HashSet<>()).add(orderId);
+    }
+  }
+
+  private void removeFromReverseIndex(String orderId) {
+    Integer syndicateMask = syndicateMasksByOrderId.remove(orderId);
+    if(syndicateMask == null) {
+      return;
+    }
+    for(Syndicate syndicate : Syndicate.fromMask(syndicateMask)) {
+      Set<String> orderIds = orderIdsBySyndicate.get(syndicate);
+      if(orderIds != null) {
+        orderIds.remove(orderId);
+      }
+    }
+  }
+}
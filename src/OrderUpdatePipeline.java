@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates and updates the fetched sell orders of an account in overlapping stages:
+ * the Syndicates of every item are resolved from the ItemCache or looked up, every order is evaluated
+ * as soon as the Syndicates of its item are known, and its update is sent as soon as it has been planned.
+ * Orders of cached items are therefore updated while other items are still being looked up, and every
+ * looked up item has its orders updated without waiting for any other item.
+ * Every planned update is recorded in the UpdateJournal before it is sent.
+ */
+class OrderUpdatePipeline {
+  private final Account account;
+  private final int visibleSyndicateMask;
+  private final SellOrders sellOrders;
+  private final UpdateProgressTracker progress;
+  private final boolean hideOrdersFirst = PropertyManager.getHideOrdersFirst();
+  //the Syndicate mask of every order by order index, -1 until it has been evaluated;
+  //every order is evaluated on one thread only and read only after all evaluations have been awaited
+  private final int[] evaluatedSyndicateMasks;
+  //indexes of the orders whose planned updates were dropped because the journal could not be written
+  private final BitSet droppedOrders;
+  //updates that have been sent but not yet awaited by order ID
+  private final Map<String, CompletableFuture<Void>> pendingUpdates = new ConcurrentHashMap<>();
+
+  /**
+   * @param account the Account that the orders belong to
+   * @param visibleSyndicateMask an int mask of all Syndicates that are set as visible
+   * @param sellOrders the current sell orders of the account
+   * @param progress the UpdateProgressTracker that all progress is recorded with
+   */
+  OrderUpdatePipeline(Account account, int visibleSyndicateMask, SellOrders sellOrders,
+      UpdateProgressTracker progress) {
+    this.account = account;
+    this.visibleSyndicateMask = visibleSyndicateMask;
+    this.sellOrders = sellOrders;
+    this.progress = progress;
+    evaluatedSyndicateMasks = new int[sellOrders.size()];
+    Arrays.fill(evaluatedSyndicateMasks, -1);
+    droppedOrders = new BitSet(sellOrders.size());
+  }
+
+  /**
+   * Sends updates that a previous run planned and recorded in the journal, without evaluating the orders again.
+   * @param plannedVisibilities the visibility that every order should be updated to by order ID
+   * @return a BitSet containing the indexes of all orders that have been updated
+   */
+  BitSet resume(Map<String, Boolean> plannedVisibilities) {
+    progress.updatesResumed(plannedVisibilities.size());
+    send(plannedVisibilities);
+    return awaitUpdates();
+  }
+
+  /**
+   * Evaluates the passed orders and updates all orders that require it, each as soon as possible.
+   * @param orders the indexes of the orders to evaluate
+   * @return a BitSet containing the indexes of all orders that have been updated
+   * @throws UncheckedIOException if item info could not be requested; the updates of all orders
+   * whose items were known have been sent and awaited anyway
+   */
+  BitSet run(int[] orders) {
+    progress.ordersFetched(orders.length);
+    //the number of orders to evaluate for every distinct item by item index
+    int[] ordersByItem = new int[sellOrders.getDistinctItems()];
+    List<String> urlNames = new ArrayList<>();
+    for(int order : orders) {
+      if(ordersByItem[sellOrders.getItem(order)]++ == 0) {
+        urlNames.add(sellOrders.getItemUrlName(order));
+      }
+    }
+    SyndicateIndex cachedIndex = SyndicateIndex.fromCache(urlNames);
+
+    //group the orders of every uncached item, so that they can be evaluated once the item has been looked up
+    int[][] uncachedOrdersByItem = new int[ordersByItem.length][];
+    int cachedOrders = 0;
+    for(int order : orders) {
+      int item = sellOrders.getItem(order);
+      if(cachedIndex.contains(sellOrders.getDistinctItemUrlName(item))) {
+        cachedOrders++;
+        continue;
+      }
+      if(uncachedOrdersByItem[item] == null) {
+        uncachedOrdersByItem[item] = new int[ordersByItem[item]];
+        ordersByItem[item] = 0;
+      }
+      uncachedOrdersByItem[item][ordersByItem[item]++] = order;
+    }
+    int[] ordersOfCachedItems = new int[cachedOrders];
+    cachedOrders = 0;
+    for(int order : orders) {
+      if(uncachedOrdersByItem[sellOrders.getItem(order)] == null) {
+        ordersOfCachedItems[cachedOrders++] = order;
+      }
+    }
+    //the updates of cached items are sent before the items are looked up, so that they go first
+    evaluateAndSend(ordersOfCachedItems, cachedIndex);
+
+    UncheckedIOException lookupFailure = null;
+    List<CompletableFuture<Void>> pendingEvaluations = new ArrayList<>();
+    try {
+      Map<String, CompletableFuture<Integer>> pendingSyndicateMasks =
+          SyndicateIndex.requestAsync(account, cachedIndex.getMissingUrlNames());
+      progress.lookupsStarted(pendingSyndicateMasks.size());
+      for(int item = 0; item < uncachedOrdersByItem.length; item++) {
+        int[] itemOrders = uncachedOrdersByItem[item];
+        if(itemOrders == null) {
+          continue;
+        }
+        String urlName = sellOrders.getDistinctItemUrlName(item);
+        CompletableFuture<Integer> pendingSyndicateMask = pendingSyndicateMasks.get(urlName);
+        if(pendingSyndicateMask == null) {
+          //unknown to the catalog, so the item has no Syndicates
+          evaluateAndSend(itemOrders, new SyndicateIndex(Collections.emptyMap(), 0));
+          continue;
+        }
+        pendingEvaluations.add(pendingSyndicateMask.thenAccept(syndicateMask -> {
+          progress.itemLookedUp();
+          evaluateAndSend(itemOrders, new SyndicateIndex(Collections.singletonMap(urlName, syndicateMask), 1));
+        }));
+      }
+    }
+    catch (UncheckedIOException e) {
+      lookupFailure = e;
+    }
+
+    for(CompletableFuture<Void> pendingEvaluation : pendingEvaluations) {
+      try {
+        pendingEvaluation.join();
+      }
+      catch (CompletionException e) {
+        if(!(e.getCause() instanceof UncheckedIOException)) {
+          throw e;
+        }
+        lookupFailure = (UncheckedIOException) e.getCause();
+      }
+    }
+    BitSet updatedOrders = awaitUpdates();
+    if(lookupFailure != null) {
+      throw lookupFailure;
+    }
+    return updatedOrders;
+  }
+
+  /**
+   * @return an int array containing the Syndicate mask of every order by order index;
+   * -1 for orders that haven't been evaluated
+   */
+  int[] getEvaluatedSyndicateMasks() {
+    return evaluatedSyndicateMasks;
+  }
+
+  /**
+   * @return a BitSet containing the indexes of all orders that required an update which was never sent,
+   * because it could not be recorded in the journal; they have to be evaluated again by the next update
+   */
+  BitSet getDroppedOrders() {
+    synchronized(droppedOrders) {
+      return (BitSet) droppedOrders.clone();
+    }
+  }
+
+  /**
+   * Evaluates orders whose Syndicates are known, records the planned updates in the journal and sends them.
+   * @param orders the indexes of the orders to evaluate
+   * @param syndicateIndex the SyndicateIndex containing the Syndicate drop sources for the items of the orders
+   */
+  private void evaluateAndSend(int[] orders, SyndicateIndex syndicateIndex) {
+    long evaluationStartNanos = System.nanoTime();
+    Map<String, Boolean> plannedVisibilities = JSONProcessor.planUpdates(sellOrders, orders, syndicateIndex,
+        visibleSyndicateMask, evaluatedSyndicateMasks);
+    for(int order : orders) {
+      String orderId = sellOrders.getId(order);
+      progress.orderEvaluated(orderId, plannedVisibilities.containsKey(orderId));
+    }
+    ApiMetrics.recordEvaluation(System.nanoTime() - evaluationStartNanos);
+    if(plannedVisibilities.isEmpty()) {
+      return;
+    }
+
+    try {
+      UpdateJournal.recordPlanned(account.getName(), plannedVisibilities);
+    }
+    catch (IOException e) {
+      //without a journal entry an interrupted batch could not be resumed, so it is not started
+      System.out.println(e.getMessage());
+      synchronized(droppedOrders) {
+        for(String orderId : plannedVisibilities.keySet()) {
+          int order = sellOrders.indexOf(orderId);
+          //the orders still have their wrong visibility, so they must not count as evaluated
+          evaluatedSyndicateMasks[order] = -1;
+          droppedOrders.set(order);
+          progress.orderUpdateFailed(orderId);
+        }
+      }
+      return;
+    }
+    send(plannedVisibilities);
+  }
+
+  /**
+   * Sends updates for the passed orders without waiting for them and records every completed update in the journal.
+   * If hiding orders first is enabled, updates that make orders invisible are sent before all others.
+   * @param plannedVisibilities the visibility that every order should be updated to by order ID
+   */
+  private void send(Map<String, Boolean> plannedVisibilities) {
+    List<Map.Entry<String, Boolean>> updates = new ArrayList<>(plannedVisibilities.entrySet());
+    //updates of a higher priority are submitted first, so that they also get the first free threads
+    updates.sort(Comparator.comparing(entry -> RequestPriority.forOrderUpdate(entry.getValue(), hideOrdersFirst)));
+    for(Map.Entry<String, Boolean> entry : updates) {
+      String orderId = entry.getKey();
+      String updateOrderRequestBody =
+          sellOrders.buildUpdateRequestBody(sellOrders.indexOf(orderId), entry.getValue());
+      RequestPriority priority = RequestPriority.forOrderUpdate(entry.getValue(), hideOrdersFirst);
+      pendingUpdates.put(orderId,
+          APIRequestManager.updateOrderAsync(account, orderId, updateOrderRequestBody, priority)
+              .whenComplete((result, e) -> {
+                if(e == null) {
+                  UpdateJournal.recordCompleted(orderId);
+                  progress.orderUpdated(orderId);
+                }
+                else {
+                  progress.orderUpdateFailed(orderId);
+                }
+              }));
+    }
+  }
+
+  /**
+   * Waits for all updates that are still in flight.
+   * Updates that fail even after retrying remain incomplete in the journal for the next update.
+   * @return a BitSet containing the indexes of all awaited orders that have been updated
+   */
+  private BitSet awaitUpdates() {
+    BitSet updatedOrders = new BitSet(sellOrders.size());
+    for(String orderId : new ArrayList<>(pendingUpdates.keySet())) {
+      try {
+        pendingUpdates.remove(orderId).join();
+        updatedOrders.set(sellOrders.indexOf(orderId));
+      }
+      catch (CompletionException e) {
+        Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+        System.out.println("Could not update order " + orderId + ", it will be retried on the next update: "
+            + cause.getMessage());
+      }
+    }
+
+    UpdateJournal.clearIfComplete();
+    return updatedOrders;
+  }
+}
@@ -0,0 +1,66 @@
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks up the items of the sell orders of all accounts in the background right after the menu has started,
+ * while the user has not asked for anything yet, so that the first update finds them in the ItemCache
+ * and only has to request the orders and send the updates.
+ * All of its requests have RequestPriority.PREFETCH, so they give way to every request the user asks for.
+ * Prefetching is only an optimization, so failures end it silently; an update requests whatever is missing.
+ */
+public class PrefetchWarmer {
+  private static Thread warmerThread;
+
+  /**
+   * Starts prefetching on a background thread, unless it has already been started.
+   */
+  public static synchronized void start() {
+    if(warmerThread != null) {
+      return;
+    }
+    warmerThread = new Thread(PrefetchWarmer::prefetchAllAccounts, "prefetch");
+    //never keeps the program from exiting
+    warmerThread.setDaemon(true);
+    warmerThread.start();
+  }
+
+  /**
+   * Stops prefetching; the request in flight, if any, is still completed.
+   */
+  public static synchronized void cancel() {
+    if(warmerThread != null) {
+      warmerThread.interrupt();
+    }
+  }
+
+  private static void prefetchAllAccounts() {
+    for(Account account : PropertyManager.getAccounts()) {
+      if(Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      if(isBlank(account.getUserName()) || isBlank(account.getJWT())) {
+        continue;
+      }
+      try {
+        SellOrders sellOrders = APIRequestManager.getAllOrdersFromOwnProfile(account, SellOrders::parse,
+            RequestPriority.PREFETCH);
+        List<String> urlNames = new ArrayList<>(sellOrders.getDistinctItems());
+        for(int item = 0; item < sellOrders.getDistinctItems(); item++) {
+          urlNames.add(sellOrders.getDistinctItemUrlName(item));
+        }
+        SyndicateIndex.prefetch(account, urlNames);
+      }
+      catch (InterruptedException e) {
+        return;
+      }
+      catch (UncheckedIOException e) {
+        //e.g. because the profile of the account doesn't exist; the update will report it
+      }
+    }
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.isEmpty();
+  }
+}
@@ -10,15 +10,50 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class is responsible for persisting certain values used by the program to a properties file.
  * It also acts as a container for those values when they are loaded into the program.
+ * Changes are written to the properties file in the background shortly after they are made.
+ * Settings that differ between Warframe Market profiles are held by the Accounts managed here.
  */
 public class PropertyManager {
   private static final String PROPERTY_FILE_LOCATION = "user_info.properties";
+  private static final long DEFAULT_ITEM_CACHE_TTL_HOURS = 7 * 24;
+  private static final int DEFAULT_ITEM_CACHE_MAX_ENTRIES = 5000;
+  private static final long DEFAULT_DAEMON_INTERVAL_MINUTES = 15;
+  private static final String DEFAULT_BASE_URL = "https://api.warframe.market/v1";
+  //changes are written to the property file this long after they are made, together with any that follow
+  private static final long STORE_DELAY_MILLIS = 500;
   private static Properties properties;
+  private static final ScheduledExecutorService storeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "property-store");
+    //a pending write must not keep the program from exiting; the shutdown hook stores the properties
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final AtomicBoolean storeScheduled = new AtomicBoolean(false);
+  //only one write of the property file at a time
+  private static final Object storeLock = new Object();
+  //separates the names of the additional accounts in their property
+  private static final String ACCOUNT_NAME_SEPARATOR = ",";
+  //all accounts by name, the default account first
+  private static final Map<String, Account> accounts = new LinkedHashMap<>();
 
   public static void init() {
     properties = new Properties();
@@ -36,14 +71,14 @@ public class PropertyManager {
     }
     catch (FileNotFoundException e) {
       //initialize with standard values
-      setVisibleNewLoka(true);
-      setVisibleThePerrinSequence(true);
-      setVisibleRedVeil(true);
-      setVisibleSteelMeridian(true);
-      setVisibleCephalonSuda(true);
-      setVisibleArbitersOfHexis(true);
-      setUserName("");
-      setJWT("");
+      for(Syndicate syndicate : Syndicate.values()) {
+        setProperty(syndicate.getPropertyKey(), String.valueOf(true));
+      }
+      setProperty("userName", "");
+      setProperty("jwt", "");
+      setItemCacheTTLHours(DEFAULT_ITEM_CACHE_TTL_HOURS);
+      setItemCacheMaxEntries(DEFAULT_ITEM_CACHE_MAX_ENTRIES);
+      setDaemonIntervalMinutes(DEFAULT_DAEMON_INTERVAL_MINUTES);
 
       //create new properties file
       storeProperties();
@@ -52,99 +87,280 @@ public class PropertyManager {
       System.out.println(e.getMessage());
       System.exit(-1);
     }
+    loadAccounts();
   }
 
   /**
-   * Persists data in properties member field to property file.
+   * Persists data in properties member field to property file right away.
+   * Changes are also persisted in the background shortly after they are made; this is for when
+   * that can not be waited for, such as on exit.
    */
   public static void storeProperties() {
     try {
-      FileOutputStream fos = new FileOutputStream(PROPERTY_FILE_LOCATION);
-      properties.store(fos, null);
-      fos.close();
+      writePropertyFile();
     }
     catch (IOException e) {
       System.out.println(e.getMessage());
-      System.exit(-1);
     }
   }
 
-  public static String getUserName() {
-    return properties.getProperty("userName", null);
+  /**
+   * Changes a property and schedules the property file to be written in the background.
+   * Changes that follow within STORE_DELAY_MILLIS are written together with this one,
+   * so that frequent changes, such as the JWT being replaced on every order update, cost a single write.
+   */
+  static void setProperty(String key, String value) {
+    properties.setProperty(key, value);
+    scheduleStore();
+  }
+
+  static String getProperty(String key) {
+    return properties.getProperty(key, null);
+  }
+
+  static void removeProperty(String key) {
+    properties.remove(key);
+    scheduleStore();
+  }
+
+  private static void scheduleStore() {
+    if(storeScheduled.compareAndSet(false, true)) {
+      storeExecutor.schedule(PropertyManager::storeScheduledProperties, STORE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static void storeScheduledProperties() {
+    //reset before writing, so that changes made during the write schedule another one
+    storeScheduled.set(false);
+    try {
+      writePropertyFile();
+    }
+    catch (IOException e) {
+      //the properties are written again with the next change or on exit
+      System.out.println(e.getMessage());
+    }
+  }
+
+  /**
+   * Writes all properties to a temporary file first and then moves it in place of the property file,
+   * so that the property file is never left partially written, even if the program is killed.
+   * @throws IOException if the file could not be written
+   */
+  private static void writePropertyFile() throws IOException {
+    synchronized(storeLock) {
+      //a copy is written, so that changing properties never has to wait for the disk;
+      //it is taken within the lock, so that a write can never replace the file with an older copy
+      Properties snapshot = (Properties) properties.clone();
+      Path propertyFile = Paths.get(PROPERTY_FILE_LOCATION);
+      Path tempFile = Paths.get(PROPERTY_FILE_LOCATION + ".tmp");
+      try(FileOutputStream fos = new FileOutputStream(tempFile.toFile())) {
+        snapshot.store(fos, null);
+        fos.getFD().sync();
+      }
+      try {
+        Files.move(tempFile, propertyFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, propertyFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+  }
+
+  public static long getItemCacheTTLHours() {
+    String strHours = properties.getProperty("itemCacheTTLHours", null);
+    try {
+      return Long.parseLong(strHours);
+    }
+    catch (NumberFormatException e) {
+      return DEFAULT_ITEM_CACHE_TTL_HOURS;
+    }
+  }
+
+  public static void setItemCacheTTLHours(long hours) {
+    setProperty("itemCacheTTLHours", String.valueOf(hours));
+  }
+
+  public static int getItemCacheMaxEntries() {
+    String strMaxEntries = properties.getProperty("itemCacheMaxEntries", null);
+    try {
+      return Integer.parseInt(strMaxEntries);
+    }
+    catch (NumberFormatException e) {
+      return DEFAULT_ITEM_CACHE_MAX_ENTRIES;
+    }
+  }
+
+  public static void setItemCacheMaxEntries(int maxEntries) {
+    setProperty("itemCacheMaxEntries", String.valueOf(maxEntries));
+  }
+
+  /**
+   * @return the number of minutes between the starts of two updates in daemon mode
+   */
+  public static long getDaemonIntervalMinutes() {
+    String strMinutes = properties.getProperty("daemonIntervalMinutes", null);
+    try {
+      return Long.parseLong(strMinutes);
+    }
+    catch (NumberFormatException e) {
+      return DEFAULT_DAEMON_INTERVAL_MINUTES;
+    }
+  }
+
+  public static void setDaemonIntervalMinutes(long minutes) {
+    setProperty("daemonIntervalMinutes", String.valueOf(minutes));
   }
 
-  public static void setUserName(String newUserName) {
-    properties.setProperty("userName", newUserName);
+  /**
+   * @return whether updates that make orders invisible are sent before all other order updates,
+   * so that orders which can't be fulfilled anymore are hidden as soon as possible; true unless disabled
+   */
+  public static boolean getHideOrdersFirst() {
+    return Boolean.parseBoolean(properties.getProperty("hideOrdersFirst", "true"));
   }
 
-  public static String getJWT() {
-    return properties.getProperty("jwt", null);
+  public static void setHideOrdersFirst(boolean hideOrdersFirst) {
+    setProperty("hideOrdersFirst", String.valueOf(hideOrdersFirst));
   }
 
-  public static void setJWT(String newJWT) {
-    properties.setProperty("jwt", newJWT);
+  /**
+   * @return a String containing the path of the file that metrics are appended to after each update;
+   * null or empty if metrics should not be written to a file
+   */
+  public static String getMetricsFile() {
+    return properties.getProperty("metricsFile", null);
   }
 
-  //long and painful-to-look-at sequence of almost identical getters and setters ahead
-  //probably could have generalized these, but chose not to
+  public static void setMetricsFile(String metricsFile) {
+    setProperty("metricsFile", metricsFile);
+  }
 
-  public static boolean getVisibleNewLoka() {
-    String strVisible = properties.getProperty("visibleNewLoka", null);
-    return Boolean.parseBoolean(strVisible);
+  /**
+   * @return an int containing the loopback port that the control API listens on; 0 if it is disabled
+   */
+  public static int getControlPort() {
+    String strPort = properties.getProperty("controlPort", null);
+    try {
+      return strPort == null ? 0 : Integer.parseInt(strPort);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
   }
 
-  public static void setVisibleNewLoka(boolean visible) {
-    String strVisible = String.valueOf(visible);
-    properties.setProperty("visibleNewLoka", strVisible);
+  public static void setControlPort(int port) {
+    setProperty("controlPort", String.valueOf(port));
   }
 
-  public static boolean getVisibleThePerrinSequence() {
-    String strVisible = properties.getProperty("visibleThePerrinSequence", null);
-    return Boolean.parseBoolean(strVisible);
+  /**
+   * @return a String containing the token that requests to the control API have to present; null if none is set yet
+   */
+  public static String getControlToken() {
+    return properties.getProperty("controlToken", null);
   }
 
-  public static void setVisibleThePerrinSequence(boolean visible) {
-    String strVisible = String.valueOf(visible);
-    properties.setProperty("visibleThePerrinSequence", strVisible);
+  public static void setControlToken(String controlToken) {
+    setProperty("controlToken", controlToken);
   }
 
-  public static boolean getVisibleRedVeil() {
-    String strVisible = properties.getProperty("visibleRedVeil", null);
-    return Boolean.parseBoolean(strVisible);
+  /**
+   * @return a String containing the URL that all API paths are appended to;
+   * only differs from the Warframe Market API when testing against a local server
+   */
+  public static String getBaseUrl() {
+    return properties.getProperty("baseUrl", DEFAULT_BASE_URL);
   }
 
-  public static void setVisibleRedVeil(boolean visible) {
-    String strVisible = String.valueOf(visible);
-    properties.setProperty("visibleRedVeil", strVisible);
+  public static void setBaseUrl(String baseUrl) {
+    setProperty("baseUrl", baseUrl);
   }
 
-  public static boolean getVisibleSteelMeridian() {
-    String strVisible = properties.getProperty("visibleSteelMeridian", null);
-    return Boolean.parseBoolean(strVisible);
+  /**
+   * @return the account that exists from the start, which uses the settings the program always used
+   */
+  public static synchronized Account getDefaultAccount() {
+    return accounts.get(Account.DEFAULT_NAME);
   }
 
-  public static void setVisibleSteelMeridian(boolean visible) {
-    String strVisible = String.valueOf(visible);
-    properties.setProperty("visibleSteelMeridian", strVisible);
+  /**
+   * @param name the name of the account
+   * @return the Account; null if there is none with that name
+   */
+  public static synchronized Account getAccount(String name) {
+    return accounts.get(name);
   }
 
-  public static boolean getVisibleCephalonSuda() {
-    String strVisible = properties.getProperty("visibleCephalonSuda", null);
-    return Boolean.parseBoolean(strVisible);
+  /**
+   * @return a List containing all accounts, the default account first
+   */
+  public static synchronized List<Account> getAccounts() {
+    return Collections.unmodifiableList(new ArrayList<>(accounts.values()));
   }
 
-  public static void setVisibleCephalonSuda(boolean visible) {
-    String strVisible = String.valueOf(visible);
-    properties.setProperty("visibleCephalonSuda", strVisible);
+  /**
+   * Adds an account without credentials and with all Syndicates set as visible.
+   * @param name the name of the new account; may not contain whitespace or the separator ','
+   * @return the new Account; null if the name is invalid or already taken
+   */
+  public static synchronized Account addAccount(String name) {
+    if(name.isEmpty() || accounts.containsKey(name) || name.contains(ACCOUNT_NAME_SEPARATOR)
+        || !name.equals(name.replaceAll("\\s", ""))) {
+      return null;
+    }
+    Account account = new Account(name);
+    account.setUserName("");
+    account.setJWT("");
+    for(Syndicate syndicate : Syndicate.values()) {
+      account.setVisible(syndicate, true);
+    }
+    accounts.put(name, account);
+    storeAccountNames();
+    return account;
   }
 
-  public static boolean getVisibleArbitersOfHexis() {
-    String strVisible = properties.getProperty("visibleArbitersOfHexis", null);
-    return Boolean.parseBoolean(strVisible);
+  /**
+   * Removes an additional account together with all of its settings and its incomplete updates in the journal.
+   * @param name the name of the account
+   * @return whether the account has been removed; false if there is none with that name or it is the default account
+   */
+  public static synchronized boolean removeAccount(String name) {
+    Account account = accounts.get(name);
+    if(account == null || account.isDefault()) {
+      return false;
+    }
+    accounts.remove(name);
+    account.removeProperties();
+    storeAccountNames();
+    //updates that the account left incomplete are never resumed, and must not be by an account of the same name
+    UpdateJournal.recordCompleted(UpdateJournal.getIncompleteUpdates(name).keySet());
+    UpdateJournal.clearIfComplete();
+    return true;
   }
 
-  public static void setVisibleArbitersOfHexis(boolean visible) {
-    String strVisible = String.valueOf(visible);
-    properties.setProperty("visibleArbitersOfHexis", strVisible);
+  /**
+   * Creates the default account and all additional accounts listed in the properties.
+   */
+  private static synchronized void loadAccounts() {
+    accounts.clear();
+    accounts.put(Account.DEFAULT_NAME, new Account(Account.DEFAULT_NAME));
+    String accountNames = properties.getProperty("accounts", "");
+    for(String name : accountNames.split(ACCOUNT_NAME_SEPARATOR)) {
+      if(!name.isEmpty() && !accounts.containsKey(name)) {
+        accounts.put(name, new Account(name));
+      }
+    }
+  }
+
+  private static void storeAccountNames() {
+    StringBuilder accountNames = new StringBuilder();
+    for(Account account : accounts.values()) {
+      if(!account.isDefault()) {
+        if(accountNames.length() > 0) {
+          accountNames.append(ACCOUNT_NAME_SEPARATOR);
+        }
+        accountNames.append(account.getName());
+      }
+    }
+    setProperty("accounts", accountNames.toString());
   }
 }
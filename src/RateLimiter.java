@@ -0,0 +1,89 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter based on System.nanoTime.
+ * Tokens are refilled continuously at a fixed rate up to the capacity of the bucket and every
+ * request has to take one token before it is sent. Callers that find the bucket empty reserve
+ * the next token ahead of time and wait for it, so waiting callers are served in the order they arrived
+ * and the permitted rate is kept no matter how long individual requests take to complete.
+ * The rate can be changed at any time, and all permits can be withheld for a while, e.g. when the API asks to
+ * retry only after some time.
+ */
+public class RateLimiter {
+  private final double capacity;
+  private long nanosPerToken;
+  //may become negative when tokens have been reserved by waiting callers
+  private double availableTokens;
+  //lies in the future while permits are withheld, since no tokens are refilled before
+  private long lastRefillNanos;
+
+  /**
+   * @param permitsPerSecond the number of tokens that are refilled per second
+   * @param capacity the maximum number of tokens that can be stored, i.e. the maximum burst size
+   */
+  public RateLimiter(double permitsPerSecond, int capacity) {
+    this.capacity = capacity;
+    this.nanosPerToken = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    this.availableTokens = capacity;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes a token from the bucket and blocks until that token is available.
+   * @return a long containing the time in nanoseconds that the caller had to wait for the token
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public long acquire() throws InterruptedException {
+    long waitNanos = reserve();
+    if(waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+    return waitNanos;
+  }
+
+  /**
+   * Changes the rate that tokens are refilled at from now on.
+   * @param permitsPerSecond the number of tokens that are refilled per second
+   */
+  public synchronized void setPermitsPerSecond(double permitsPerSecond) {
+    //tokens up to now are refilled at the previous rate
+    refill(System.nanoTime());
+    nanosPerToken = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+  }
+
+  /**
+   * Withholds all tokens for a while; callers that reserve a token in the meantime wait until the pause is over.
+   * A pause that ends earlier than one in effect leaves that one as it is.
+   * @param pauseNanos the time in nanoseconds from now until tokens are refilled again
+   */
+  public synchronized void pause(long pauseNanos) {
+    long now = System.nanoTime();
+    refill(now);
+    lastRefillNanos = Math.max(lastRefillNanos, now + pauseNanos);
+  }
+
+  /**
+   * Reserves a token and calculates how long the caller has to wait until it becomes available.
+   * @return a long containing the time in nanoseconds until the reserved token becomes available
+   */
+  private synchronized long reserve() {
+    long now = System.nanoTime();
+    refill(now);
+
+    availableTokens -= 1;
+    //the time until the end of a pause, if any
+    long waitNanos = lastRefillNanos - now;
+    if(availableTokens < 0) {
+      waitNanos += (long) (-availableTokens * nanosPerToken);
+    }
+    return waitNanos;
+  }
+
+  private void refill(long now) {
+    if(now > lastRefillNanos) {
+      availableTokens = Math.min(capacity,
+          availableTokens + (double) (now - lastRefillNanos) / nanosPerToken);
+      lastRefillNanos = now;
+    }
+  }
+}
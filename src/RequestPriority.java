@@ -0,0 +1,24 @@
+/**
+ * The priority of a request to the Warframe Market API, highest first.
+ * Requests of a higher priority are sent before any waiting request of a lower priority,
+ * no matter which account they are made for.
+ */
+public enum RequestPriority {
+  //updates that make orders invisible, so that orders which can't be fulfilled disappear as soon as possible
+  HIDE_ORDER,
+  //all other order updates
+  UPDATE_ORDER,
+  //requests that only read data, such as orders and item info
+  READ,
+  //reads in the background that nobody waits for yet, so that they never hold up any other request
+  PREFETCH;
+
+  /**
+   * @param visible the visibility that an order is updated to
+   * @param hideOrdersFirst whether updates that make orders invisible take precedence over other updates
+   * @return the priority for the update of the order
+   */
+  public static RequestPriority forOrderUpdate(boolean visible, boolean hideOrdersFirst) {
+    return hideOrdersFirst && !visible ? HIDE_ORDER : UPDATE_ORDER;
+  }
+}
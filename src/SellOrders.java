@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Holds the parts of the sell orders of a profile that the program needs, in profile order:
+ * every order's ID, item, price, quantity, mod rank and visibility.
+ * The orders are stored in columns of primitive arrays and addressed by their index, and every distinct
+ * item is stored only once, so that even very large profiles take little memory and the orders are
+ * extracted from the response in a single streaming pass without building a tree of the whole response.
+ * The visibility of orders can be changed to reflect completed updates; everything else is fixed.
+ */
+public class SellOrders {
+  //mod_rank of orders for items that have no rank
+  private static final int NO_MOD_RANK = -1;
+
+  private final int size;
+  private final String[] ids;
+  //index of every order's item within itemUrlNames
+  private final int[] items;
+  private final String[] itemUrlNames;
+  private final float[] platinum;
+  private final int[] quantities;
+  private final int[] modRanks;
+  private final BitSet visible;
+  //open addressing table from order ID to order index + 1, 0 marking a free slot
+  private final int[] idSlots;
+
+  private SellOrders(int size, String[] ids, int[] items, String[] itemUrlNames, float[] platinum, int[] quantities,
+      int[] modRanks, BitSet visible) {
+    this.size = size;
+    this.ids = ids;
+    this.items = items;
+    this.itemUrlNames = itemUrlNames;
+    this.platinum = platinum;
+    this.quantities = quantities;
+    this.modRanks = modRanks;
+    this.visible = visible;
+    //at most half of the slots are taken, so that lookups find a free slot quickly
+    idSlots = new int[Integer.highestOneBit(Math.max(1, size) * 2) * 2];
+    for(int order = 0; order < size; order++) {
+      int slot = findSlot(ids[order]);
+      if(idSlots[slot] == 0) {
+        idSlots[slot] = order + 1;
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public String getId(int order) {
+    return ids[order];
+  }
+
+  /**
+   * @param id the ID of an order
+   * @return the index of the order with the passed ID; -1 if there is no such order
+   */
+  public int indexOf(String id) {
+    return idSlots[findSlot(id)] - 1;
+  }
+
+  /**
+   * @param order the index of an order
+   * @return the index of the order's item among all distinct items of the orders
+   */
+  public int getItem(int order) {
+    return items[order];
+  }
+
+  public String getItemUrlName(int order) {
+    return itemUrlNames[items[order]];
+  }
+
+  /**
+   * @return the number of distinct items that the orders are for
+   */
+  public int getDistinctItems() {
+    return itemUrlNames.length;
+  }
+
+  /**
+   * @param item the index of an item among all distinct items of the orders
+   * @return a String containing the url_name of the item
+   */
+  public String getDistinctItemUrlName(int item) {
+    return itemUrlNames[item];
+  }
+
+  public float getPlatinum(int order) {
+    return platinum[order];
+  }
+
+  public int getQuantity(int order) {
+    return quantities[order];
+  }
+
+  public boolean hasModRank(int order) {
+    return modRanks[order] != NO_MOD_RANK;
+  }
+
+  public int getModRank(int order) {
+    return modRanks[order];
+  }
+
+  public boolean isVisible(int order) {
+    return visible.get(order);
+  }
+
+  public void setVisible(int order, boolean visible) {
+    this.visible.set(order, visible);
+  }
+
+  /**
+   * Builds the JSON String for the request body of an update of an order, written directly from its fields.
+   * @param order the index of the order to update
+   * @param visible the visibility to update the order to
+   * @return a JSON String containing the key-value pairs to update the order with
+   */
+  public String buildUpdateRequestBody(int order, boolean visible) {
+    StringBuilder body = new StringBuilder(128);
+    body.append("{\"order_id\":").append(JSONObject.quote(ids[order]))
+        .append(",\"platinum\":").append(JSONObject.numberToString(platinum[order]))
+        .append(",\"quantity\":").append(quantities[order])
+        .append(",\"visible\":").append(visible);
+    if(hasModRank(order)) {
+      body.append(",\"mod_rank\":").append(modRanks[order]);
+    }
+    return body.append('}').toString();
+  }
+
+  /**
+   * Extracts the sell orders from a Reader providing a response with all orders of a user.
+   * Expected structure: {"payload": {"sell_orders": [{"id": ..., "platinum": ..., "quantity": ..., "visible": ...,
+   * "mod_rank": ..., "item": {"url_name": ...}}], ...}}, where mod_rank is only present for items with a rank
+   * @param reader the Reader providing the JSON text of the response
+   * @return the extracted SellOrders
+   * @throws IOException if reading fails, the JSON text is malformed or an order lacks a required field
+   */
+  public static SellOrders parse(Reader reader) throws IOException {
+    JsonPullParser parser = new JsonPullParser(reader);
+    Builder builder = new Builder();
+    parser.beginObject();
+    while(parser.hasNext()) {
+      if(!parser.nextName().equals("payload")) {
+        parser.skipValue();
+        continue;
+      }
+      parser.beginObject();
+      while(parser.hasNext()) {
+        if(!parser.nextName().equals("sell_orders")) {
+          parser.skipValue();
+          continue;
+        }
+        parser.beginArray();
+        while(parser.hasNext()) {
+          parseOrder(parser, builder);
+        }
+        parser.endArray();
+      }
+      parser.endObject();
+    }
+    parser.endObject();
+    return builder.build();
+  }
+
+  private static void parseOrder(JsonPullParser parser, Builder builder) throws IOException {
+    String id = null;
+    String itemUrlName = null;
+    float platinum = 0;
+    int quantity = 0;
+    int modRank = NO_MOD_RANK;
+    boolean visible = false;
+    parser.beginObject();
+    while(parser.hasNext()) {
+      switch(parser.nextName()) {
+        case "id":
+          id = parser.nextString();
+          break;
+        case "platinum":
+          platinum = (float) parser.nextDouble();
+          break;
+        case "quantity":
+          quantity = parser.nextInt();
+          break;
+        case "mod_rank":
+          if(parser.peek() == JsonPullParser.Token.NULL) {
+            parser.nextNull();
+          }
+          else {
+            modRank = parser.nextInt();
+          }
+          break;
+        case "visible":
+          visible = parser.nextBoolean();
+          break;
+        case "item":
+          itemUrlName = parseItemUrlName(parser);
+          break;
+        default:
+          parser.skipValue();
+      }
+    }
+    parser.endObject();
+
+    if(id == null || itemUrlName == null) {
+      throw new IOException("Sell order contains no " + (id == null ? "ID" : "item url_name"));
+    }
+    builder.add(id, itemUrlName, platinum, quantity, modRank, visible);
+  }
+
+  private static String parseItemUrlName(JsonPullParser parser) throws IOException {
+    String urlName = null;
+    parser.beginObject();
+    while(parser.hasNext()) {
+      if(parser.nextName().equals("url_name")) {
+        urlName = parser.nextString();
+      }
+      else {
+        parser.skipValue();
+      }
+    }
+    parser.endObject();
+    return urlName;
+  }
+
+  private int findSlot(String id) {
+    int mask = idSlots.length - 1;
+    int hash = id.hashCode();
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    while(idSlots[slot] != 0 && !ids[idSlots[slot] - 1].equals(id)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Collects orders into growing columns and interns the url_name of every item.
+   */
+  private static class Builder {
+    private int size = 0;
+    private String[] ids = new String[16];
+    private int[] items = new int[16];
+    private float[] platinum = new float[16];
+    private int[] quantities = new int[16];
+    private int[] modRanks = new int[16];
+    private final BitSet visible = new BitSet();
+    //index of every distinct item by url_name
+    private final Map<String, Integer> itemsByUrlName = new HashMap<>();
+    private String[] itemUrlNames = new String[16];
+
+    private void add(String id, String itemUrlName, float orderPlatinum, int quantity, int modRank,
+        boolean orderVisible) {
+      if(size == ids.length) {
+        int capacity = size * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        items = Arrays.copyOf(items, capacity);
+        platinum = Arrays.copyOf(platinum, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        modRanks = Arrays.copyOf(modRanks, capacity);
+      }
+      Integer item = itemsByUrlName.get(itemUrlName);
+      if(item == null) {
+        item = itemsByUrlName.size();
+        itemsByUrlName.put(itemUrlName, item);
+        if(item == itemUrlNames.length) {
+          itemUrlNames = Arrays.copyOf(itemUrlNames, item * 2);
+        }
+        itemUrlNames[item] = itemUrlName;
+      }
+      ids[size] = id;
+      items[size] = item;
+      platinum[size] = orderPlatinum;
+      quantities[size] = quantity;
+      modRanks[size] = modRank;
+      visible.set(size, orderVisible);
+      size++;
+    }
+
+    private SellOrders build() {
+      return new SellOrders(size, Arrays.copyOf(ids, size), Arrays.copyOf(items, size),
+          Arrays.copyOf(itemUrlNames, itemsByUrlName.size()), Arrays.copyOf(platinum, size),
+          Arrays.copyOf(quantities, size), Arrays.copyOf(modRanks, size), visible);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * The Syndicates that items can be acquired from. Every Syndicate has a bit of its own, so that any
+ * combination of Syndicates, such as the drop sources of an item or the Syndicates set as visible,
+ * can be held in a single int mask.
+ * To support another Syndicate, adding it here is all that is required.
+ */
+public enum Syndicate {
+  NEW_LOKA("New Loka", "New Loka", "loka", "visibleNewLoka"),
+  PERRIN_SEQUENCE("Perrin Sequence", "The Perrin Sequence", "perrin", "visibleThePerrinSequence"),
+  RED_VEIL("Red Veil", "Red Veil", "veil", "visibleRedVeil"),
+  STEEL_MERIDIAN("Steel Meridian", "Steel Meridian", "meridian", "visibleSteelMeridian"),
+  CEPHALON_SUDA("Cephalon Suda", "Cephalon Suda", "suda", "visibleCephalonSuda"),
+  ARBITERS_OF_HEXIS("Arbiters of Hexis", "Arbiters of Hexis", "arbiters", "visibleArbitersOfHexis");
+
+  private static final Syndicate[] VALUES = values();
+  //drop source matcher: the Syndicates whose source name starts with a character, by that character
+  private static final Syndicate[][] SYNDICATES_BY_FIRST_CHAR = new Syndicate[128][];
+
+  static {
+    for(Syndicate syndicate : VALUES) {
+      char firstChar = syndicate.sourceName.charAt(0);
+      Syndicate[] candidates = SYNDICATES_BY_FIRST_CHAR[firstChar];
+      if(candidates == null) {
+        candidates = new Syndicate[] {syndicate};
+      }
+      else {
+        candidates = Arrays.copyOf(candidates, candidates.length + 1);
+        candidates[candidates.length - 1] = syndicate;
+      }
+      SYNDICATES_BY_FIRST_CHAR[firstChar] = candidates;
+    }
+  }
+
+  //the name that drop sources of the Syndicate's items contain, also used in the item cache file
+  private final String sourceName;
+  private final String displayName;
+  //the name that the Syndicate is referred to by in user commands
+  private final String commandName;
+  //the key of the Syndicate's visibility in the properties file
+  private final String propertyKey;
+  private final int mask;
+
+  Syndicate(String sourceName, String displayName, String commandName, String propertyKey) {
+    this.sourceName = sourceName;
+    this.displayName = displayName;
+    this.commandName = commandName;
+    this.propertyKey = propertyKey;
+    this.mask = 1 << ordinal();
+  }
+
+  public String getSourceName() {
+    return sourceName;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+
+  public String getCommandName() {
+    return commandName;
+  }
+
+  public String getPropertyKey() {
+    return propertyKey;
+  }
+
+  /**
+   * @return an int with only the bit of this Syndicate set
+   */
+  public int getMask() {
+    return mask;
+  }
+
+  /**
+   * @param mask an int mask of Syndicates
+   * @return whether this Syndicate is contained within the mask
+   */
+  public boolean isIn(int mask) {
+    return (this.mask & mask) != 0;
+  }
+
+  /**
+   * Finds the Syndicate that a user command refers to.
+   * @param commandName the name used in the command, such as "veil"
+   * @return the Syndicate; null if there is none with that command name
+   */
+  public static Syndicate fromCommandName(String commandName) {
+    for(Syndicate syndicate : VALUES) {
+      if(syndicate.commandName.equals(commandName)) {
+        return syndicate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the Syndicate with the passed source name.
+   * @param sourceName the source name, such as "Red Veil"
+   * @return the Syndicate; null if there is none with that source name
+   */
+  public static Syndicate fromSourceName(String sourceName) {
+    for(Syndicate syndicate : VALUES) {
+      if(syndicate.sourceName.equals(sourceName)) {
+        return syndicate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the Syndicate whose source name is contained within the name of a drop source.
+   * Only positions whose character starts the name of a Syndicate are compared, and nothing is allocated.
+   * @param dropSourceName the name of a drop source, such as "Red Veil Rank 3"
+   * @return the Syndicate whose source name occurs first within the drop source name;
+   * null if the drop source is not a Syndicate
+   */
+  public static Syndicate matchDropSource(String dropSourceName) {
+    for(int i = 0; i < dropSourceName.length(); i++) {
+      char c = dropSourceName.charAt(i);
+      Syndicate[] candidates = c < SYNDICATES_BY_FIRST_CHAR.length ? SYNDICATES_BY_FIRST_CHAR[c] : null;
+      if(candidates == null) {
+        continue;
+      }
+      for(Syndicate candidate : candidates) {
+        if(dropSourceName.startsWith(candidate.sourceName, i)) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param mask an int mask of Syndicates
+   * @return an EnumSet containing every Syndicate within the mask
+   */
+  public static EnumSet<Syndicate> fromMask(int mask) {
+    EnumSet<Syndicate> syndicates = EnumSet.noneOf(Syndicate.class);
+    for(Syndicate syndicate : VALUES) {
+      if(syndicate.isIn(mask)) {
+        syndicates.add(syndicate);
+      }
+    }
+    return syndicates;
+  }
+}
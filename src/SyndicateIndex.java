@@ -0,0 +1,439 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * In-memory index that maps the url_name of items to the Syndicates they can be acquired from.
+ * The index is built in bulk for a collection of items, so that every distinct item is looked up
+ * at most once, no matter how many orders refer to it. Since the details of an item contain the drop sources
+ * of every item in its set, a lookup also caches all other items of the set.
+ */
+public class SyndicateIndex {
+  //item details requests that are still in flight by url_name, shared by everyone who looks up the same item
+  private static final Map<String, CompletableFuture<Integer>> inFlightLookups = new ConcurrentHashMap<>();
+  //prefetch requests for item details that may still be waiting for their turn by url_name
+  private static final Map<String, APIRequestManager.QueuedRequest<ItemDetails>> queuedPrefetches =
+      new ConcurrentHashMap<>();
+  //the item catalog request that is still in flight, shared by everyone who needs the catalog meanwhile
+  private static CompletableFuture<Set<String>> inFlightCatalog = null;
+  private static RequestPriority inFlightCatalogPriority = null;
+
+  private final Map<String, Integer> syndicateMasksByUrlName;
+  //number of item detail requests that were made to build this index
+  private final int requestedItems;
+  //url_names that the index was built for, but which were neither cached nor requested
+  private final Set<String> missingUrlNames;
+
+  SyndicateIndex(Map<String, Integer> syndicateMasksByUrlName, int requestedItems) {
+    this(syndicateMasksByUrlName, requestedItems, Collections.emptySet());
+  }
+
+  private SyndicateIndex(Map<String, Integer> syndicateMasksByUrlName, int requestedItems,
+      Set<String> missingUrlNames) {
+    this.syndicateMasksByUrlName = syndicateMasksByUrlName;
+    this.requestedItems = requestedItems;
+    this.missingUrlNames = missingUrlNames;
+  }
+
+  /**
+   * Builds an index for the passed items. Items are resolved from the ItemCache where possible.
+   * Only if items are missing from the cache, the item catalog is requested once and details are
+   * requested for every missing item that is known to the catalog.
+   * @param account the Account on whose behalf any requests are made
+   * @param urlNames the url_names of all items that the index should contain; may contain duplicates
+   * @return the built SyndicateIndex
+   * @throws UncheckedIOException if a required request failed
+   */
+  public static SyndicateIndex build(Account account, Collection<String> urlNames) {
+    SyndicateIndex cachedIndex = fromCache(urlNames);
+    if(cachedIndex.missingUrlNames.isEmpty()) {
+      return cachedIndex;
+    }
+    SyndicateIndex requestedIndex = request(account, cachedIndex.missingUrlNames);
+    Map<String, Integer> syndicateMasksByUrlName = new HashMap<>(cachedIndex.syndicateMasksByUrlName);
+    syndicateMasksByUrlName.putAll(requestedIndex.syndicateMasksByUrlName);
+    return new SyndicateIndex(syndicateMasksByUrlName, requestedIndex.requestedItems);
+  }
+
+  /**
+   * Builds an index of the passed items that are found in the ItemCache, without making any requests.
+   * The items that are not cached can be looked up with request() afterwards.
+   * @param urlNames the url_names of all items that the index should contain; may contain duplicates
+   * @return the SyndicateIndex of all cached items
+   */
+  public static SyndicateIndex fromCache(Collection<String> urlNames) {
+    Map<String, Integer> syndicateMasksByUrlName = new HashMap<>();
+    Set<String> missingUrlNames = new LinkedHashSet<>();
+    for(String urlName : urlNames) {
+      if(syndicateMasksByUrlName.containsKey(urlName) || missingUrlNames.contains(urlName)) {
+        continue;
+      }
+      Integer cachedSyndicateMask = ItemCache.get(urlName);
+      if(cachedSyndicateMask != null) {
+        ApiMetrics.recordItemCacheHit();
+        syndicateMasksByUrlName.put(urlName, cachedSyndicateMask);
+      }
+      else {
+        ApiMetrics.recordItemCacheMiss();
+        missingUrlNames.add(urlName);
+      }
+    }
+    return new SyndicateIndex(syndicateMasksByUrlName, 0, missingUrlNames);
+  }
+
+  /**
+   * Builds an index for the passed items by requesting them, and puts them into the ItemCache.
+   * The item catalog is requested once and details are requested for every item that is known to the catalog.
+   * @param account the Account on whose behalf the requests are made
+   * @param urlNames the url_names of the items to request
+   * @return the SyndicateIndex of all requested items
+   * @throws UncheckedIOException if a request failed
+   */
+  public static SyndicateIndex request(Account account, Set<String> urlNames) {
+    Map<String, Integer> syndicateMasksByUrlName = new HashMap<>();
+    Map<String, CompletableFuture<Integer>> pendingSyndicateMasks = requestAsync(account, urlNames);
+    for(Map.Entry<String, CompletableFuture<Integer>> entry : pendingSyndicateMasks.entrySet()) {
+      syndicateMasksByUrlName.put(entry.getKey(), joinSyndicateMask(entry.getValue()));
+    }
+    return new SyndicateIndex(syndicateMasksByUrlName, pendingSyndicateMasks.size());
+  }
+
+  /**
+   * Requests the passed items without waiting for their details, so that each item can be processed
+   * as soon as its own details have arrived. Every item is put into the ItemCache once its details arrive.
+   * Only the item catalog is requested before returning, since it decides which items have details at all.
+   * An item that is already being requested, for example by the update of another account, is not requested
+   * again; its callers share the request in flight and the single parse of its response.
+   * @param account the Account on whose behalf the requests are made
+   * @param urlNames the url_names of the items to request
+   * @return a Map containing a CompletableFuture for every item known to the catalog by url_name, which completes
+   * with the mask of the item's Syndicate drop sources; completes exceptionally with an UncheckedIOException
+   * if the request failed. Items that are unknown to the catalog have no details page, so they are left out.
+   * @throws UncheckedIOException if the item catalog could not be requested
+   */
+  public static Map<String, CompletableFuture<Integer>> requestAsync(Account account, Set<String> urlNames) {
+    Map<String, CompletableFuture<Integer>> pendingSyndicateMasks = new LinkedHashMap<>();
+    if(urlNames.isEmpty()) {
+      return pendingSyndicateMasks;
+    }
+    Set<String> catalogUrlNames = getCatalogUrlNames(account, RequestPriority.READ);
+    //request all items at once, so that responses overlap instead of adding up
+    for(String urlName : urlNames) {
+      if(catalogUrlNames.contains(urlName)) {
+        pendingSyndicateMasks.put(urlName, lookUp(account, urlName, RequestPriority.READ));
+      }
+    }
+    return pendingSyndicateMasks;
+  }
+
+  /**
+   * Looks up the items that are not cached yet in the background, one after another, so that later updates
+   * find them in the ItemCache. The requests have RequestPriority.PREFETCH, so any other request is sent first.
+   * Since only a single item is requested at a time, at most one of these requests is ever ahead of others.
+   * Updates that need an item while it is being prefetched wait for the prefetch instead of requesting it again,
+   * unless the prefetch is still waiting for its turn; then it is replaced by a request of the update's priority.
+   * @param account the Account on whose behalf the requests are made
+   * @param urlNames the url_names of the items to look up; may contain duplicates
+   * @return an int containing the number of items that have been requested
+   * @throws UncheckedIOException if a request failed
+   * @throws InterruptedException if the calling thread was interrupted; the remaining items are not looked up then
+   */
+  public static int prefetch(Account account, Collection<String> urlNames) throws InterruptedException {
+    Set<String> missingUrlNames = new LinkedHashSet<>();
+    for(String urlName : urlNames) {
+      //the cache is not asked through fromCache(), so that prefetching doesn't count towards its hit ratio
+      if(ItemCache.get(urlName) == null) {
+        missingUrlNames.add(urlName);
+      }
+    }
+    if(missingUrlNames.isEmpty()) {
+      return 0;
+    }
+
+    Set<String> catalogUrlNames = getCatalogUrlNames(account, RequestPriority.PREFETCH);
+    int requestedItems = 0;
+    for(String urlName : missingUrlNames) {
+      if(Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      //items of a set are cached by the lookup of any other item of the set
+      if(!catalogUrlNames.contains(urlName) || ItemCache.get(urlName) != null) {
+        continue;
+      }
+      try {
+        lookUp(account, urlName, RequestPriority.PREFETCH).get();
+        requestedItems++;
+      }
+      catch (ExecutionException e) {
+        if(e.getCause() instanceof UncheckedIOException) {
+          throw (UncheckedIOException) e.getCause();
+        }
+        throw new CompletionException(e.getCause());
+      }
+    }
+    return requestedItems;
+  }
+
+  /**
+   * Looks up the Syndicates of a single item, joining the request for it that is already in flight if there is one.
+   * A prefetch request that is joined with a higher priority before it has started is replaced by a request
+   * of that priority, since it would otherwise only be sent after every other request.
+   * @param account the Account on whose behalf a new request is made
+   * @param urlName the url_name of the item
+   * @param priority the RequestPriority of a new request
+   * @return a CompletableFuture that completes with the mask of the item's Syndicate drop sources;
+   * completes exceptionally with an UncheckedIOException if the request failed
+   */
+  private static CompletableFuture<Integer> lookUp(Account account, String urlName, RequestPriority priority) {
+    CompletableFuture<Integer> lookup = new CompletableFuture<>();
+    CompletableFuture<Integer> inFlightLookup = inFlightLookups.putIfAbsent(urlName, lookup);
+    if(inFlightLookup != null) {
+      ApiMetrics.recordCoalescedItemLookup();
+      if(priority != RequestPriority.PREFETCH) {
+        APIRequestManager.QueuedRequest<ItemDetails> queuedPrefetch = queuedPrefetches.remove(urlName);
+        if(queuedPrefetch != null && queuedPrefetch.cancelIfQueued()) {
+          requestDetails(account, urlName, priority, inFlightLookup);
+        }
+      }
+      return inFlightLookup;
+    }
+    //a lookup that completed since the caller checked the cache has left the item there
+    Integer cachedSyndicateMask = ItemCache.get(urlName);
+    if(cachedSyndicateMask != null) {
+      inFlightLookups.remove(urlName, lookup);
+      lookup.complete(cachedSyndicateMask);
+      return lookup;
+    }
+
+    requestDetails(account, urlName, priority, lookup);
+    return lookup;
+  }
+
+  /**
+   * Requests the details of an item for a lookup and completes the lookup with them.
+   * @param account the Account on whose behalf the request is made
+   * @param urlName the url_name of the item
+   * @param priority the RequestPriority of the request
+   * @param lookup the CompletableFuture of the lookup in inFlightLookups that the request completes
+   */
+  private static void requestDetails(Account account, String urlName, RequestPriority priority,
+      CompletableFuture<Integer> lookup) {
+    APIRequestManager.QueuedRequest<ItemDetails> request = APIRequestManager.getItemInfoAsync(account, urlName,
+        ItemDetails::parse, priority);
+    if(priority == RequestPriority.PREFETCH) {
+      queuedPrefetches.put(urlName, request);
+    }
+    //a response for another item of the same set may complete the lookup first; then the request is not needed
+    lookup.thenRun(() -> request.cancel(false));
+    request.whenComplete((itemDetails, e) -> {
+      queuedPrefetches.remove(urlName, request);
+      if(e instanceof CancellationException) {
+        //the lookup has been completed otherwise, or is completed by the request that replaced this one
+        return;
+      }
+      if(e == null) {
+        int syndicateMask = JSONProcessor.itemDropsFromSyndicates(itemDetails);
+        cacheSetMembers(urlName, itemDetails);
+        ItemCache.put(urlName, syndicateMask);
+        //cached before the lookup is removed, so that later callers find the item in one place or the other
+        inFlightLookups.remove(urlName, lookup);
+        lookup.complete(syndicateMask);
+      }
+      else {
+        inFlightLookups.remove(urlName, lookup);
+        lookup.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+      }
+    });
+  }
+
+  /**
+   * Puts the other items of a looked up item's set into the ItemCache, since the response already contains
+   * their drop sources, and completes the lookups of those items that are still waiting for their own request.
+   * @param urlName the url_name of the looked up item
+   * @param itemDetails the ItemDetails of the looked up item
+   */
+  private static void cacheSetMembers(String urlName, ItemDetails itemDetails) {
+    for(ItemDetails.SetMember setMember : itemDetails.getItemsInSet()) {
+      String memberUrlName = setMember.getUrlName();
+      if(memberUrlName == null || memberUrlName.equals(urlName)) {
+        continue;
+      }
+      int syndicateMask = JSONProcessor.itemDropsFromSyndicates(setMember.getDropNames());
+      ItemCache.put(memberUrlName, syndicateMask);
+      ApiMetrics.recordCachedSetMember();
+      CompletableFuture<Integer> memberLookup = inFlightLookups.remove(memberUrlName);
+      if(memberLookup != null) {
+        memberLookup.complete(syndicateMask);
+      }
+    }
+  }
+
+  /**
+   * Waits for a requested Syndicate mask and passes on a failed request as it was thrown.
+   * @param pendingSyndicateMask the CompletableFuture of the item details request
+   * @return the mask of the item's Syndicate drop sources
+   * @throws UncheckedIOException if the request failed
+   */
+  static int joinSyndicateMask(CompletableFuture<Integer> pendingSyndicateMask) {
+    try {
+      return pendingSyndicateMask.join();
+    }
+    catch (CompletionException e) {
+      if(e.getCause() instanceof UncheckedIOException) {
+        throw (UncheckedIOException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Looks up the Syndicates that an item can be acquired from.
+   * @param urlName the url_name of the item
+   * @return an int mask of all Syndicate drop sources for the item;
+   * 0 if it doesn't have any or the item is not part of the index
+   */
+  public int getSyndicateMask(String urlName) {
+    Integer syndicateMask = syndicateMasksByUrlName.get(urlName);
+    return syndicateMask == null ? 0 : syndicateMask;
+  }
+
+  /**
+   * @param urlName the url_name of the item
+   * @return whether the item is part of the index
+   */
+  public boolean contains(String urlName) {
+    return syndicateMasksByUrlName.containsKey(urlName);
+  }
+
+  /**
+   * @return a Set of Strings containing the url_names that the index was built for,
+   * but which were neither found in the ItemCache nor requested
+   */
+  public Set<String> getMissingUrlNames() {
+    return missingUrlNames;
+  }
+
+  public int size() {
+    return syndicateMasksByUrlName.size();
+  }
+
+  public int getRequestedItems() {
+    return requestedItems;
+  }
+
+  /**
+   * Requests the item catalog and collects the url_names of all items within it.
+   * Callers that need the catalog while it is being requested wait for that request instead of making their own,
+   * unless it is a prefetch and they have a higher priority.
+   * @param account the Account on whose behalf a new request is made
+   * @param priority the RequestPriority of a new request
+   * @return a Set of Strings containing the url_name of every item known to Warframe Market
+   * @throws UncheckedIOException if the request failed
+   */
+  private static Set<String> getCatalogUrlNames(Account account, RequestPriority priority) {
+    CompletableFuture<Set<String>> catalog;
+    boolean requesting = false;
+    boolean jumpingPrefetch = false;
+    synchronized(SyndicateIndex.class) {
+      if(inFlightCatalog == null) {
+        inFlightCatalog = new CompletableFuture<>();
+        inFlightCatalogPriority = priority;
+        requesting = true;
+      }
+      else if(inFlightCatalogPriority == RequestPriority.PREFETCH && priority != RequestPriority.PREFETCH) {
+        jumpingPrefetch = true;
+      }
+      catalog = inFlightCatalog;
+    }
+    if(jumpingPrefetch) {
+      //the prefetch waits for the rate limit behind every other request, so the catalog is requested separately;
+      //it is usually answered with 304 (not modified) and read from the HttpResponseCache
+      return APIRequestManager.getAllItemsInfo(account, SyndicateIndex::parseCatalogUrlNames, priority);
+    }
+    if(!requesting) {
+      try {
+        return catalog.join();
+      }
+      catch (CompletionException e) {
+        if(e.getCause() instanceof UncheckedIOException) {
+          throw (UncheckedIOException) e.getCause();
+        }
+        throw e;
+      }
+    }
+
+    try {
+      Set<String> catalogUrlNames = APIRequestManager.getAllItemsInfo(account, SyndicateIndex::parseCatalogUrlNames,
+          priority);
+      catalog.complete(catalogUrlNames);
+      return catalogUrlNames;
+    }
+    catch (RuntimeException e) {
+      catalog.completeExceptionally(e);
+      throw e;
+    }
+    finally {
+      synchronized(SyndicateIndex.class) {
+        inFlightCatalog = null;
+        inFlightCatalogPriority = null;
+      }
+    }
+  }
+
+  /**
+   * Extracts the url_names of all items from the item catalog while it is being read,
+   * without holding the whole catalog in memory.
+   * Expected structure: {"payload": {"items": [{"url_name": ..., ...}, ...]}}
+   * @param reader the Reader providing the JSON text of the item catalog
+   * @return a Set of Strings containing the url_name of every item within the catalog
+   * @throws IOException if reading fails or the JSON text is malformed
+   */
+  private static Set<String> parseCatalogUrlNames(Reader reader) throws IOException {
+    JsonPullParser parser = new JsonPullParser(reader);
+    Set<String> catalogUrlNames = new HashSet<>();
+    parser.beginObject();
+    while(parser.hasNext()) {
+      if(!parser.nextName().equals("payload")) {
+        parser.skipValue();
+        continue;
+      }
+      parser.beginObject();
+      while(parser.hasNext()) {
+        if(!parser.nextName().equals("items")) {
+          parser.skipValue();
+          continue;
+        }
+        parser.beginArray();
+        while(parser.hasNext()) {
+          parser.beginObject();
+          while(parser.hasNext()) {
+            if(parser.nextName().equals("url_name")) {
+              catalogUrlNames.add(parser.nextString());
+            }
+            else {
+              parser.skipValue();
+            }
+          }
+          parser.endObject();
+        }
+        parser.endArray();
+      }
+      parser.endObject();
+    }
+    parser.endObject();
+    return catalogUrlNames;
+  }
+}
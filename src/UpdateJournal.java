@@ -0,0 +1,155 @@
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Write-ahead journal for order updates. Before any order is updated, the planned visibility
+ * for every order of the batch is written to the journal file and every completed update is
+ * recorded as well. If the program stops before the batch is complete, the next update can
+ * continue with the remaining orders instead of determining them all over again.
+ * The journal is shared by all accounts, which is possible since order IDs are unique across profiles.
+ * File format, one entry per line: "PLAN &lt;orderId&gt; &lt;visible&gt; &lt;account&gt;" or "DONE &lt;orderId&gt;";
+ * PLAN entries without an account stem from before there were several accounts and belong to the default account.
+ */
+public class UpdateJournal {
+  private static final String JOURNAL_FILE_LOCATION = "update_journal.txt";
+  private static final String PLANNED = "PLAN";
+  private static final String COMPLETED = "DONE";
+
+  /**
+   * Reads the planned updates of an account from the journal file that have not been completed yet.
+   * @param accountName the name of the account whose updates are read
+   * @return a Map containing the planned visibility of every incomplete update by order ID, in planned order;
+   * empty if there is no journal
+   */
+  public static synchronized Map<String, Boolean> getIncompleteUpdates(String accountName) {
+    Map<String, Boolean> incompleteUpdates = new LinkedHashMap<>();
+    for(Map.Entry<String, String[]> entry : readIncompleteUpdates().entrySet()) {
+      if(entry.getValue()[1].equals(accountName)) {
+        incompleteUpdates.put(entry.getKey(), Boolean.parseBoolean(entry.getValue()[0]));
+      }
+    }
+    return incompleteUpdates;
+  }
+
+  /**
+   * @return a Map containing the planned visibility and the account name of every incomplete update by order ID,
+   * in planned order; empty if there is no journal
+   */
+  private static Map<String, String[]> readIncompleteUpdates() {
+    Map<String, String[]> incompleteUpdates = new LinkedHashMap<>();
+    try(BufferedReader reader = new BufferedReader(new FileReader(JOURNAL_FILE_LOCATION, StandardCharsets.UTF_8))) {
+      String line;
+      while((line = reader.readLine()) != null) {
+        String[] entry = line.split(" ");
+        if(entry.length == 3 && entry[0].equals(PLANNED)) {
+          incompleteUpdates.put(entry[1], new String[] {entry[2], Account.DEFAULT_NAME});
+        }
+        else if(entry.length == 4 && entry[0].equals(PLANNED)) {
+          incompleteUpdates.put(entry[1], new String[] {entry[2], entry[3]});
+        }
+        else if(entry.length == 2 && entry[0].equals(COMPLETED)) {
+          incompleteUpdates.remove(entry[1]);
+        }
+        //anything else is a line that was only partially written when the program stopped
+      }
+    }
+    catch (FileNotFoundException e) {
+      //no journal, so nothing is incomplete
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+    return incompleteUpdates;
+  }
+
+  /**
+   * Records a batch of planned updates before any of them is sent.
+   * @param accountName the name of the account whose orders are updated
+   * @param plannedVisibilities the visibility that every order of the batch will be updated to by order ID
+   * @throws IOException if the journal could not be written, in which case the batch should not be sent
+   */
+  public static synchronized void recordPlanned(String accountName, Map<String, Boolean> plannedVisibilities)
+      throws IOException {
+    StringBuilder entries = new StringBuilder();
+    for(Map.Entry<String, Boolean> entry : plannedVisibilities.entrySet()) {
+      entries.append(PLANNED).append(' ').append(entry.getKey()).append(' ').append(entry.getValue())
+          .append(' ').append(accountName).append('\n');
+    }
+    append(entries.toString());
+  }
+
+  /**
+   * Records that the update of an order has been completed.
+   * @param orderId the ID of the updated order
+   */
+  public static synchronized void recordCompleted(String orderId) {
+    try {
+      append(COMPLETED + ' ' + orderId + '\n');
+    }
+    catch (IOException e) {
+      //at worst the order is updated to the same visibility once more on the next update
+      System.out.println(e.getMessage());
+    }
+  }
+
+  /**
+   * Records that planned updates don't have to be sent anymore, all at once.
+   * @param orderIds the IDs of the orders whose updates are done with
+   */
+  public static synchronized void recordCompleted(Collection<String> orderIds) {
+    if(orderIds.isEmpty()) {
+      return;
+    }
+    StringBuilder entries = new StringBuilder();
+    for(String orderId : orderIds) {
+      entries.append(COMPLETED).append(' ').append(orderId).append('\n');
+    }
+    try {
+      append(entries.toString());
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+  /**
+   * Removes the journal if all of its planned updates have been completed.
+   * Checking and removing happen at once, so that updates planned for another account in the meantime are kept.
+   */
+  public static synchronized void clearIfComplete() {
+    if(readIncompleteUpdates().isEmpty()) {
+      clear();
+    }
+  }
+
+  /**
+   * Removes the journal once all of its planned updates have been completed.
+   */
+  public static synchronized void clear() {
+    try {
+      Files.deleteIfExists(Paths.get(JOURNAL_FILE_LOCATION));
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+  /**
+   * Appends entries to the journal file and forces them to the storage device before returning.
+   */
+  private static void append(String entries) throws IOException {
+    try(FileOutputStream fos = new FileOutputStream(JOURNAL_FILE_LOCATION, true)) {
+      fos.write(entries.getBytes(StandardCharsets.UTF_8));
+      fos.getFD().sync();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * The progress of the update of an account's orders at the moment of an event, such as an order having been
+ * evaluated or updated. Published to an UpdateProgress.Listener while the update runs.
+ * The estimated time remaining assumes that the orders which are still to be evaluated need updates as often
+ * as those evaluated so far, and that requests keep being made at the current rate.
+ */
+public class UpdateProgress {
+  private final Account account;
+  private final Event event;
+  private final String orderId;
+  private final int ordersToEvaluate;
+  private final int evaluatedOrders;
+  private final int plannedUpdates;
+  private final int completedUpdates;
+  private final int failedUpdates;
+  private final int itemsToLookUp;
+  private final int lookedUpItems;
+  private final long elapsedNanos;
+
+  /**
+   * The events that progress is published on.
+   */
+  public enum Event {
+    //the orders of the account have been fetched and it is known which of them have to be evaluated
+    ORDERS_FETCHED,
+    //an order has been evaluated and, if required, its update has been planned
+    ORDER_EVALUATED,
+    //the details of an item have been looked up
+    ITEM_LOOKED_UP,
+    //an order has been updated
+    ORDER_UPDATED,
+    //an order could not be updated; it will be retried with the next update
+    ORDER_UPDATE_FAILED,
+    //all orders have been evaluated and all updates have completed or failed
+    FINISHED
+  }
+
+  /**
+   * Receives the progress of updates. Called on the threads that make progress, possibly on several at once,
+   * so implementations have to be thread-safe and should return quickly.
+   */
+  @FunctionalInterface
+  public interface Listener {
+    void onProgress(UpdateProgress progress);
+  }
+
+  UpdateProgress(Account account, Event event, String orderId, int ordersToEvaluate, int evaluatedOrders,
+      int plannedUpdates, int completedUpdates, int failedUpdates, int itemsToLookUp, int lookedUpItems,
+      long elapsedNanos) {
+    this.account = account;
+    this.event = event;
+    this.orderId = orderId;
+    this.ordersToEvaluate = ordersToEvaluate;
+    this.evaluatedOrders = evaluatedOrders;
+    this.plannedUpdates = plannedUpdates;
+    this.completedUpdates = completedUpdates;
+    this.failedUpdates = failedUpdates;
+    this.itemsToLookUp = itemsToLookUp;
+    this.lookedUpItems = lookedUpItems;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public Account getAccount() {
+    return account;
+  }
+
+  public Event getEvent() {
+    return event;
+  }
+
+  /**
+   * @return a String containing the ID of the order that the event is about; null for events about no single order
+   */
+  public String getOrderId() {
+    return orderId;
+  }
+
+  public int getOrdersToEvaluate() {
+    return ordersToEvaluate;
+  }
+
+  public int getEvaluatedOrders() {
+    return evaluatedOrders;
+  }
+
+  /**
+   * @return the number of orders that have been found to require an update so far, including resumed updates
+   */
+  public int getPlannedUpdates() {
+    return plannedUpdates;
+  }
+
+  public int getCompletedUpdates() {
+    return completedUpdates;
+  }
+
+  public int getFailedUpdates() {
+    return failedUpdates;
+  }
+
+  public int getItemsToLookUp() {
+    return itemsToLookUp;
+  }
+
+  public int getLookedUpItems() {
+    return lookedUpItems;
+  }
+
+  /**
+   * @return the time in nanoseconds since the update started
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return the number of item lookups and order updates that have been finished per second since the update started
+   */
+  public double getRequestsPerSecond() {
+    int finishedRequests = lookedUpItems + completedUpdates + failedUpdates;
+    return elapsedNanos == 0 ? 0 : finishedRequests / (elapsedNanos / 1e9);
+  }
+
+  /**
+   * @return the estimated time in nanoseconds until the update is finished; -1 if it can't be estimated yet
+   */
+  public long getEstimatedRemainingNanos() {
+    double remainingRequests = itemsToLookUp - lookedUpItems + plannedUpdates - completedUpdates - failedUpdates;
+    if(evaluatedOrders > 0) {
+      remainingRequests += (double) (ordersToEvaluate - evaluatedOrders) * plannedUpdates / evaluatedOrders;
+    }
+    if(remainingRequests <= 0) {
+      return 0;
+    }
+    double requestsPerSecond = getRequestsPerSecond();
+    return requestsPerSecond == 0 ? -1 : (long) (remainingRequests / requestsPerSecond * 1e9);
+  }
+}
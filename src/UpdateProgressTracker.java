@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the progress of the update of an account's orders and publishes every change to a listener.
+ * Progress may be recorded from several threads at once.
+ */
+class UpdateProgressTracker {
+  private final Account account;
+  private final UpdateProgress.Listener listener;
+  private final long startNanos = System.nanoTime();
+  private volatile int ordersToEvaluate;
+  private volatile int itemsToLookUp;
+  private final AtomicInteger evaluatedOrders = new AtomicInteger();
+  private final AtomicInteger plannedUpdates = new AtomicInteger();
+  private final AtomicInteger completedUpdates = new AtomicInteger();
+  private final AtomicInteger failedUpdates = new AtomicInteger();
+  private final AtomicInteger lookedUpItems = new AtomicInteger();
+
+  /**
+   * @param account the Account whose orders are updated
+   * @param listener the UpdateProgress.Listener to publish to; may be null if nobody is interested
+   */
+  UpdateProgressTracker(Account account, UpdateProgress.Listener listener) {
+    this.account = account;
+    this.listener = listener;
+  }
+
+  void ordersFetched(int ordersToEvaluate) {
+    this.ordersToEvaluate = ordersToEvaluate;
+    publish(UpdateProgress.Event.ORDERS_FETCHED, null);
+  }
+
+  void lookupsStarted(int itemsToLookUp) {
+    this.itemsToLookUp = itemsToLookUp;
+  }
+
+  void itemLookedUp() {
+    lookedUpItems.incrementAndGet();
+    publish(UpdateProgress.Event.ITEM_LOOKED_UP, null);
+  }
+
+  /**
+   * Records updates that are sent without evaluating their orders again, because a previous update planned them.
+   */
+  void updatesResumed(int resumedUpdates) {
+    plannedUpdates.addAndGet(resumedUpdates);
+  }
+
+  void orderEvaluated(String orderId, boolean updatePlanned) {
+    if(updatePlanned) {
+      plannedUpdates.incrementAndGet();
+    }
+    evaluatedOrders.incrementAndGet();
+    publish(UpdateProgress.Event.ORDER_EVALUATED, orderId);
+  }
+
+  void orderUpdated(String orderId) {
+    completedUpdates.incrementAndGet();
+    publish(UpdateProgress.Event.ORDER_UPDATED, orderId);
+  }
+
+  void orderUpdateFailed(String orderId) {
+    failedUpdates.incrementAndGet();
+    publish(UpdateProgress.Event.ORDER_UPDATE_FAILED, orderId);
+  }
+
+  void finished() {
+    publish(UpdateProgress.Event.FINISHED, null);
+  }
+
+  private void publish(UpdateProgress.Event event, String orderId) {
+    if(listener == null) {
+      return;
+    }
+    listener.onProgress(new UpdateProgress(account, event, orderId, ordersToEvaluate, evaluatedOrders.get(),
+        plannedUpdates.get(), completedUpdates.get(), failedUpdates.get(), itemsToLookUp, lookedUpItems.get(),
+        System.nanoTime() - startNanos));
+  }
+}